@@ -0,0 +1,82 @@
+package spring.study.batch.part4;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 기존 User.Level의 if 체인(한 건씩 평가)과 LevelRule의 chunk 단위 평가를 item 당 비용으로 비교한다.
+ * ./gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LevelRuleBenchmark {
+
+    private static final int CHUNK = 1_000;
+
+    private final LevelRule levelRule = LevelRule.defaults();
+
+    private long[] totalAmounts;
+    private byte[] codes;
+
+    @Setup
+    public void setUp() {
+
+        Random random = new Random(42);
+
+        totalAmounts = new long[CHUNK];
+        codes = new byte[CHUNK];
+
+        for (int i = 0; i < CHUNK; i++) {
+            totalAmounts[i] = random.nextInt(700_000);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public void enumPath(Blackhole blackhole) {
+
+        for (int i = 0; i < CHUNK; i++) {
+            blackhole.consume(legacyNextLevel(totalAmounts[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public void ruleEnginePerItem(Blackhole blackhole) {
+
+        for (int i = 0; i < CHUNK; i++) {
+            blackhole.consume(levelRule.classify(totalAmounts[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public byte[] ruleEngineChunk() {
+
+        levelRule.classify(totalAmounts, codes, CHUNK);
+
+        return codes;
+    }
+
+    // LevelRule 도입 전 User.Level.getNextLevel()의 if 체인
+    private static User.Level legacyNextLevel(long totalAmount) {
+
+        if (totalAmount >= User.Level.VIP.getNextAmount()) return User.Level.VIP;
+        if (totalAmount >= User.Level.GOLD.getNextAmount()) return User.Level.GOLD.getNextLevel();
+        if (totalAmount >= User.Level.SILVER.getNextAmount()) return User.Level.SILVER.getNextLevel();
+        if (totalAmount >= User.Level.NORMAL.getNextAmount()) return User.Level.NORMAL.getNextLevel();
+
+        return User.Level.NORMAL;
+    }
+}
@@ -0,0 +1,159 @@
+package spring.study.batch.part6;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.jdbc.core.namedparam.BeanPropertySqlParameterSource;
+import spring.study.batch.part3.Person;
+import spring.study.batch.part5.OrderStatistics;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * BeanWrapperFieldExtractor/BeanPropertySqlParameterSource(reflection)와 RecordBinder의 item 당 필드 추출 비용을 비교한다.
+ * ./gradlew jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RecordBinderBenchmark {
+
+    private static final int CHUNK = 1_000;
+    private static final String[] PERSON_NAMES = { "id", "name", "age", "address" };
+
+    private final List<Person> people = new ArrayList<>();
+    private final List<OrderStatistics> statistics = new ArrayList<>();
+
+    private DelimitedLineAggregator<Person> personLineAggregator;
+    private DelimitedLineAggregator<OrderStatistics> statisticsLineAggregator;
+    private BinderFlatFileItemWriter<Person> personItemWriter;
+    private BinderFlatFileItemWriter<OrderStatistics> statisticsItemWriter;
+
+    @Setup
+    public void setUp() {
+
+        for (int i = 0; i < CHUNK; i++) {
+            people.add(new Person(i, "test name" + i, "test age", "test address"));
+            statistics.add(OrderStatistics.builder().amount(i * 1_000L).date(LocalDate.of(2020, 11, 1).plusDays(i % 30)).build());
+        }
+
+        personLineAggregator = lineAggregator(PERSON_NAMES);
+        statisticsLineAggregator = lineAggregator(new String[] { "amount", "date" });
+        personItemWriter = new BinderFlatFileItemWriter<>(RecordBinders.PERSON_WITH_ID, ",");
+        statisticsItemWriter = new BinderFlatFileItemWriter<>(RecordBinders.ORDER_STATISTICS, ",");
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public String personCsvReflection() {
+
+        StringBuilder lines = new StringBuilder();
+
+        for (Person person : people) {
+            lines.append(personLineAggregator.aggregate(person)).append('\n');
+        }
+
+        return lines.toString();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public String personCsvBinder() {
+
+        return personItemWriter.doWrite(people);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public String statisticsCsvReflection() {
+
+        StringBuilder lines = new StringBuilder();
+
+        for (OrderStatistics item : statistics) {
+            lines.append(statisticsLineAggregator.aggregate(item)).append('\n');
+        }
+
+        return lines.toString();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public String statisticsCsvBinder() {
+
+        return statisticsItemWriter.doWrite(statistics);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public void personParameterReflection(Blackhole blackhole) {
+
+        // BeanPropertyItemSqlParameterSourceProvider가 item마다 만드는 것과 같은 ParameterSource
+        for (Person person : people) {
+            BeanPropertySqlParameterSource source = new BeanPropertySqlParameterSource(person);
+
+            for (String name : PERSON_NAMES) {
+                blackhole.consume(source.getValue(name));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CHUNK)
+    public void personParameterBinder(Blackhole blackhole) {
+
+        // PreparedStatement 대신 값만 소비하는 FieldSink (JDBC driver 비용을 제외한 추출 비용)
+        FieldSink sink = new FieldSink() {
+            @Override
+            public void putString(String value) {
+                blackhole.consume(value);
+            }
+
+            @Override
+            public void putLong(long value) {
+                blackhole.consume(value);
+            }
+
+            @Override
+            public void putInt(int value) {
+                blackhole.consume(value);
+            }
+
+            @Override
+            public void putDouble(double value) {
+                blackhole.consume(value);
+            }
+
+            @Override
+            public void putDate(LocalDate value) {
+                blackhole.consume(value);
+            }
+        };
+
+        for (Person person : people) {
+            RecordBinders.PERSON_WITH_ID.bind(person, sink);
+        }
+    }
+
+    private static <T> DelimitedLineAggregator<T> lineAggregator(String[] names) {
+
+        BeanWrapperFieldExtractor<T> fieldExtractor = new BeanWrapperFieldExtractor<>();
+        fieldExtractor.setNames(names);
+
+        DelimitedLineAggregator<T> lineAggregator = new DelimitedLineAggregator<>();
+        lineAggregator.setDelimiter(",");
+        lineAggregator.setFieldExtractor(fieldExtractor);
+
+        return lineAggregator;
+    }
+}
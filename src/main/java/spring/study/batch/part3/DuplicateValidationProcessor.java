@@ -24,10 +24,9 @@ public class DuplicateValidationProcessor<T> implements ItemProcessor<T, T> {
         
         String key = keyExtractor.apply(item); // item을 받아서 key를 추출한다.
         
-        if (keyPool.containsKey(key)) return null; // key가 keyPool에 이미 존재할 경우
-        
         // keyPool에 key가 존재하지 않을 경우 keyPool에 보관하여 다음 key의 중복 여부를 검사하도록 준비
-        keyPool.put(key, key);
+        // containsKey() 후 put() 하면 여러 partition(thread)이 같은 key를 동시에 통과할 수 있기 때문에 putIfAbsent()로 한 번에 확인하고 보관한다.
+        if (keyPool.putIfAbsent(key, key) != null) return null; // key가 keyPool에 이미 존재할 경우
         
         return item;
     }
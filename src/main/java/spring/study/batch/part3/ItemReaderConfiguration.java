@@ -7,6 +7,7 @@ import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JdbcCursorItemReader;
 import org.springframework.batch.item.database.JpaCursorItemReader;
@@ -19,6 +20,8 @@ import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import spring.study.batch.part6.MappedCsvItemReader;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
@@ -120,7 +123,28 @@ public class ItemReaderConfiguration {
         return itemReader;
     }
     
-    private FlatFileItemReader<Person> csvFileItemReader() throws Exception {
+    private ItemStreamReader<Person> csvFileItemReader() throws Exception {
+    
+        Resource resource = new ClassPathResource("test.csv");
+    
+        if (!resource.isFile()) return this.flatFileItemReader(resource); // jar 안의 resource는 memory-map 할 수 없다.
+    
+        // 파일을 memory-map 하여 줄마다 String/FieldSet을 만들지 않고 필드 위치(id, 이름, 나이, 거주지)에서 바로 Person을 만든다.
+        MappedCsvItemReader<Person> itemReader = new MappedCsvItemReader<>(record -> new Person(
+            record.getInt(0),
+            record.getString(1),
+            record.getString(2),
+            record.getString(3)
+        ));
+        itemReader.setName("csvFileItemReader");
+        itemReader.setResource(resource);
+        itemReader.setLinesToSkip(1); // csv 파일의 첫 번째 줄인 id,이름,나이,거주지를 생략하도록 처리
+        itemReader.afterPropertiesSet(); // item이 필요한 설정값이 잘 됐는지 검증하는 메서드
+    
+        return itemReader;
+    }
+    
+    private FlatFileItemReader<Person> flatFileItemReader(Resource resource) throws Exception {
     
         DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>(); // csv 파일을 한 줄씩 읽을 수 있는 LineMapper 객체
         DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
@@ -140,7 +164,7 @@ public class ItemReaderConfiguration {
         FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
             .name("csvFileItemReader")
             .encoding("UTF-8")
-            .resource(new ClassPathResource("test.csv"))
+            .resource(resource)
             .linesToSkip(1) // csv 파일의 첫 번째 줄인 id,이름,나이,거주지를 생략하도록 처리
             .lineMapper(lineMapper)
             .build();
@@ -5,22 +5,26 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.BeanPropertyItemSqlParameterSourceProvider;
 import org.springframework.batch.item.database.JdbcBatchItemWriter;
 import org.springframework.batch.item.database.JpaItemWriter;
 import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilder;
 import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
+import spring.study.batch.part6.BinderFlatFileItemWriter;
+import spring.study.batch.part6.ChannelItemWriter;
+import spring.study.batch.part6.IdBlockAllocator;
+import spring.study.batch.part6.OutputFormat;
+import spring.study.batch.part6.PreparedStatementFieldSink;
+import spring.study.batch.part6.RecordBinders;
+import spring.study.batch.part6.StatelessSessionItemWriter;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
@@ -42,19 +46,21 @@ public class ItemWriterConfiguration {
         
         return this.jobBuilderFactory.get("itemWriterJob")
             .incrementer(new RunIdIncrementer())
-            .start(this.csvItemWriterStep())
+            .start(this.csvItemWriterStep(null))
 //            .next(this.jdbcBatchItemWriterStep())
             .next(this.jpaItemWriterStep())
+//            .next(this.statelessItemWriterStep())
             .build();
     }
     
     @Bean
-    public Step csvItemWriterStep() throws Exception {
+    @JobScope
+    public Step csvItemWriterStep(@Value("#{jobParameters[outputFormat]}") String outputFormat) throws Exception {
         
         return this.stepBuilderFactory.get("csvItemWriterStep")
             .<Person, Person>chunk(10)
             .reader(this.itemReader())
-            .writer(this.csvFileItemWriter())
+            .writer(this.csvFileItemWriter(OutputFormat.of(outputFormat)))
             .build();
     }
     
@@ -78,6 +84,25 @@ public class ItemWriterConfiguration {
             .build();
     }
     
+    @Bean
+    public Step statelessItemWriterStep() {
+    
+        return stepBuilderFactory.get("statelessItemWriterStep")
+            .<Person, Person>chunk(10)
+            .reader(this.itemReader())
+            .writer(this.statelessItemWriter())
+            .build();
+    }
+    
+    private ItemWriter<Person> statelessItemWriter() {
+    
+        // 영속성 컨텍스트를 사용하지 않기 때문에 chunk가 커져도 1차 캐시가 쌓이지 않는다.
+        StatelessSessionItemWriter<Person> itemWriter = StatelessSessionItemWriter.insert(entityManagerFactory, dataSource);
+        itemWriter.afterPropertiesSet();
+    
+        return itemWriter;
+    }
+    
     private ItemWriter<Person> jpaItemWriter() throws Exception {
     
         JpaItemWriter<Person> itemWriter = new JpaItemWriterBuilder<Person>()
@@ -91,34 +116,41 @@ public class ItemWriterConfiguration {
     
     private ItemWriter<Person> jdbcBatchItemWriter() {
     
+        IdBlockAllocator idBlockAllocator = new IdBlockAllocator(dataSource);
+    
         JdbcBatchItemWriter<Person> itemWriter = new JdbcBatchItemWriterBuilder<Person>()
             .dataSource(dataSource)
-            .itemSqlParameterSourceProvider(new BeanPropertyItemSqlParameterSourceProvider<>())
-            .sql("INSERT INTO person (name, age, address) VALUES (:name, :age, :address)")
+            .itemPreparedStatementSetter((person, ps) -> { // id를 미리 할당받아야 INSERT가 batch 처리된다.
+                ps.setLong(1, idBlockAllocator.nextId("person"));
+                RecordBinders.PERSON.bind(person, new PreparedStatementFieldSink().startAt(ps, 2)); // getter로 바로 setString (parameter Map을 만들지 않는다.)
+            })
+            .sql("INSERT INTO person (id, name, age, address) VALUES (?, ?, ?, ?)")
             .build();
         itemWriter.afterPropertiesSet();
     
         return itemWriter;
     }
     
-    private ItemWriter<Person> csvFileItemWriter() throws Exception {
+    private ItemWriter<Person> csvFileItemWriter(OutputFormat format) throws Exception {
     
-        BeanWrapperFieldExtractor<Person> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] { "id", "name", "age", "address" });
+        if (format != OutputFormat.CSV) {
+            // outputFormat=csv_gzip, ndjson, binary: FileChannel로 기록한다. (footer는 CSV에서만 사용)
+            ChannelItemWriter<Person> itemWriter = new ChannelItemWriter<>(RecordBinders.PERSON_WITH_ID, new String[] { "id", "name", "age", "address" }, format);
+            itemWriter.setName("csvFileItemWriter");
+            itemWriter.setResource(new FileSystemResource(format.fileName("output/test-output.csv")));
+            itemWriter.setHeader("id,이름,나이,거주지");
+            itemWriter.afterPropertiesSet();
     
-        DelimitedLineAggregator<Person> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
+            return itemWriter;
+        }
     
-        FlatFileItemWriter<Person> itemWriter = new FlatFileItemWriterBuilder<Person>()
-            .name("csvFileItemWriter")
-            .encoding("UTF-8")
-            .resource(new FileSystemResource("output/test-output.csv"))
-            .lineAggregator(lineAggregator)
-            .headerCallback(writer -> writer.write("id,이름,나이,거주지"))
-            .footerCallback(writer -> writer.write("----------------\n"))
-//            .append(true) // true: 덮어쓰기가 아닌 이어쓰기
-            .build();
+        BinderFlatFileItemWriter<Person> itemWriter = new BinderFlatFileItemWriter<>(RecordBinders.PERSON_WITH_ID, ","); // id, name, age, address
+        itemWriter.setName("csvFileItemWriter");
+        itemWriter.setEncoding("UTF-8");
+        itemWriter.setResource(new FileSystemResource("output/test-output.csv"));
+        itemWriter.setHeaderCallback(writer -> writer.write("id,이름,나이,거주지"));
+        itemWriter.setFooterCallback(writer -> writer.write("----------------\n"));
+//        itemWriter.setAppendAllowed(true); // true: 덮어쓰기가 아닌 이어쓰기
         itemWriter.afterPropertiesSet();
     
         return itemWriter;
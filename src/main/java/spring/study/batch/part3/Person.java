@@ -4,10 +4,11 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import spring.study.batch.part6.PooledIdGenerator;
 
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import java.util.Objects;
 
@@ -19,7 +20,8 @@ import java.util.Objects;
 public class Person {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "pooled") // IDENTITY는 INSERT batch가 되지 않기 때문에 id를 미리 할당받는다.
+    @GenericGenerator(name = "pooled", strategy = PooledIdGenerator.STRATEGY)
     private long id;
     
     private String name;
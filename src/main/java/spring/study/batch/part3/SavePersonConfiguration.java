@@ -1,5 +1,6 @@
 package spring.study.batch.part3;
 
+import io.micrometer.core.instrument.util.StringUtils;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
@@ -7,9 +8,14 @@ import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.listener.ExecutionContextPromotionListener;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
 import org.springframework.batch.item.ItemProcessor;
-import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ItemStreamReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JpaItemWriter;
 import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
@@ -25,24 +31,49 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.TaskExecutor;
+import spring.study.batch.part5.JobParametersDecide;
+import spring.study.batch.part6.BulkLoadStagingItemWriter;
+import spring.study.batch.part6.BulkLoadTasklet;
+import spring.study.batch.part6.CsvByteRangePartitioner;
+import spring.study.batch.part6.IdBlockAllocator;
+import spring.study.batch.part6.MappedCsvItemReader;
+import spring.study.batch.part6.StatelessSessionItemWriter;
 
 import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.util.Objects;
 
 @Slf4j
 @Configuration
 @RequiredArgsConstructor
 public class SavePersonConfiguration {
     
+    private static final String PERSON_CSV = "person.csv";
+    private static final String[] PERSON_COLUMNS = { "id", "name", "age", "address" }; // bulk load 임시 파일의 컬럼 순서
+    
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final EntityManagerFactory entityManagerFactory;
+    private final DataSource dataSource;
+    private final TaskExecutor taskExecutor;
     
     @Bean
     public Job savePersonJob() throws Exception {
         
+        JobParametersDecide partitionDecide = new JobParametersDecide("gridSize"); // gridSize가 있으면 person.csv를 byte 범위로 나누어 병렬로 저장한다.
+        
         return this.jobBuilderFactory.get("savePersonJob")
             .incrementer(new RunIdIncrementer())
-            .start(this.savePersonStep(null))
+            .start(partitionDecide)
+            .on(JobParametersDecide.CONTINUE.getName())
+            .to(this.savePersonManagerStep())
+            .from(partitionDecide)
+            .on("*")
+            .to(this.savePersonStep(null, null))
+            .next(this.savePersonBulkLoadStep()) // writerType=bulk인 경우에만 임시 파일을 저장한다.
+            .end()
             .listener(new SavePersonListener.SavePersonJobExecutionListener())
             .listener(new SavePersonListener.SavePersonAnnotationJobExecutionListener())
             .build();
@@ -50,20 +81,135 @@ public class SavePersonConfiguration {
     
     @Bean
     @JobScope // Spring Batch의 jobParameters를 Step에서 사용하기 위해 @JobScope을 설정해야 한다. (jobParameters를 SpEL로 사용하기 위해 @JobScope이 항상 필요하다.)
-    public Step savePersonStep(@Value("#{jobParameters[allow_duplicate]}") String allowDuplicate) throws Exception {
+    public Step savePersonStep(
+        @Value("#{jobParameters[allow_duplicate]}") String allowDuplicate,
+        @Value("#{jobParameters[writerType]}") String writerType
+    ) throws Exception {
         
+        // partition으로 실행되는 경우에도 Step(@JobScope)은 하나이기 때문에 itemProcessor의 중복 검사(keyPool)를 모든 partition이 함께 사용한다.
         return this.stepBuilderFactory.get("savePersonStep")
             .<Person, Person>chunk(10)
-            .reader(this.itemReader())
+            .reader(this.savePersonItemReader(null, null))
             .processor(this.itemProcessor(allowDuplicate)) // allowDuplicate가 null인 경우 기본적으로 false로 전달된다.
-            .writer(this.itemWriter())
+            .writer(this.itemWriter(writerType))
             .listener(new SavePersonListener.SavePersonStepExecutionListener())
+            .listener(this.bulkLoadPromotionListener())
             .faultTolerant() // faultTolerant() 메서드 뒤에 SkipListener가 와야 한다.
             .skip(NotFoundNameException.class)
             .skipLimit(2)
             .build();
     }
     
+    @Bean("savePersonStep.manager")
+    public Step savePersonManagerStep() throws Exception {
+    
+        return this.stepBuilderFactory.get("savePersonStep.manager")
+            .partitioner("savePersonStep", this.savePersonPartitioner(null))
+            .step(this.savePersonStep(null, null))
+            .partitionHandler(this.savePersonPartitionHandler(null))
+            .build();
+    }
+    
+    @Bean
+    @StepScope
+    public Partitioner savePersonPartitioner(@Value("#{jobParameters[writerType]}") String writerType) {
+    
+        // writerType=bulk는 Step 하나의 임시 파일을 JobExecutionContext로 올리기 때문에 partition과 함께 사용할 수 없다.
+        if ("bulk".equalsIgnoreCase(writerType)) throw new IllegalArgumentException("writerType=bulk는 gridSize와 함께 사용할 수 없습니다.");
+    
+        return new CsvByteRangePartitioner(new ClassPathResource(PERSON_CSV), 1); // header(이름,나이,거주지)를 제외하고 줄 경계로 나눈다.
+    }
+    
+    @Bean
+    @JobScope
+    public PartitionHandler savePersonPartitionHandler(@Value("#{jobParameters[gridSize]}") String gridSize) throws Exception {
+    
+        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
+        handler.setStep(this.savePersonStep(null, null));
+        handler.setTaskExecutor(taskExecutor);
+        handler.setGridSize(StringUtils.isEmpty(gridSize) ? 1 : Integer.parseInt(gridSize));
+        
+        return handler;
+    }
+    
+    @Bean
+    @StepScope // partition 별 ExecutionContext의 startOffset, endOffset을 사용하기 위해 StepScope로 설정 (partition이 아닌 경우 파일 전체를 읽는다.)
+    public ItemStreamReader<Person> savePersonItemReader(
+        @Value("#{stepExecutionContext[startOffset]}") Long startOffset,
+        @Value("#{stepExecutionContext[endOffset]}") Long endOffset
+    ) throws Exception {
+    
+        Resource resource = new ClassPathResource(PERSON_CSV);
+    
+        // jar 안의 resource는 memory-map 할 수 없기 때문에 FlatFileItemReader로 읽는다. (CsvByteRangePartitioner도 이 경우 파일 전체를 하나의 partition으로 만든다.)
+        if (!resource.isFile()) return this.flatFileItemReader(resource);
+    
+        MappedCsvItemReader<Person> itemReader = new MappedCsvItemReader<>(record ->
+            Person.builder()
+                .name(record.getString(0))
+                .age(record.getString(1))
+                .address(record.getString(2))
+                .build()
+        );
+        itemReader.setName("savePersonItemReader");
+        itemReader.setResource(resource);
+        itemReader.setLinesToSkip(1);
+        if (Objects.nonNull(startOffset)) itemReader.setStartOffset(startOffset);
+        if (Objects.nonNull(endOffset)) itemReader.setEndOffset(endOffset);
+        itemReader.afterPropertiesSet();
+    
+        return itemReader;
+    }
+    
+    private FlatFileItemReader<Person> flatFileItemReader(Resource resource) throws Exception {
+    
+        DelimitedLineTokenizer lineTokenizer = new DelimitedLineTokenizer();
+        lineTokenizer.setNames("name", "age", "address");
+        
+        DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>();
+        lineMapper.setLineTokenizer(lineTokenizer);
+        lineMapper.setFieldSetMapper(fieldSet ->
+            Person.builder()
+                .name(fieldSet.readString(0))
+                .age(fieldSet.readString(1))
+                .address(fieldSet.readString(2))
+                .build()
+        );
+    
+        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
+            .name("savePersonItemReader")
+            .encoding("UTF-8")
+            .linesToSkip(1)
+            .resource(resource)
+            .lineMapper(lineMapper)
+            .build();
+        itemReader.afterPropertiesSet();
+    
+        return itemReader;
+    }
+    
+    @Bean
+    public Step savePersonBulkLoadStep() {
+    
+        return this.stepBuilderFactory.get("savePersonBulkLoadStep")
+            .tasklet(new BulkLoadTasklet(dataSource, "person", PERSON_COLUMNS))
+            .build();
+    }
+    
+    private ExecutionContextPromotionListener bulkLoadPromotionListener() {
+    
+        // savePersonStep의 임시 파일 경로와 건수를 JobExecutionContext로 올려서 savePersonBulkLoadStep에서 사용한다.
+        ExecutionContextPromotionListener listener = new ExecutionContextPromotionListener();
+        listener.setKeys(new String[] {
+            BulkLoadStagingItemWriter.FILE_KEY,
+            BulkLoadStagingItemWriter.STAGED_KEY,
+            BulkLoadStagingItemWriter.REJECTED_KEY
+        });
+        listener.setStrict(false); // bulk가 아닌 경우 key가 없다.
+    
+        return listener;
+    }
+    
     private ItemProcessor<? super Person, ? extends Person> itemProcessor(String allowDuplicate) throws Exception {
     
         DuplicateValidationProcessor<Person> duplicateValidationProcessor = new DuplicateValidationProcessor<>(Person::getName, Boolean.parseBoolean(allowDuplicate));
@@ -83,49 +229,47 @@ public class SavePersonConfiguration {
         return itemProcessor;
     }
     
-    private ItemWriter<Person> itemWriter() throws Exception {
+    private ItemWriter<Person> itemWriter(String writerType) throws Exception {
         
 //        return items -> items.forEach(person -> log.info("저는 {}입니다.", person.getName()));
     
-        JpaItemWriter<Person> jpaItemWriter = new JpaItemWriterBuilder<Person>()
-            .entityManagerFactory(entityManagerFactory)
-            .build();
+        ItemWriter<Person> personItemWriter = this.personItemWriter(writerType); // writerType에 따라 JpaItemWriter 또는 StatelessSessionItemWriter
         
         ItemWriter<Person> logItemWriter = items -> log.info("person.size: {}", items.size());
     
         // WARN: CompositeItemWriter를 사용할 때에는 ItemWriter가 중복으로 처리될 수도 있고 순서가 중요하기 때문에 사용에 주의해야 함
         CompositeItemWriter<Person> itemWriter = new CompositeItemWriterBuilder<Person>()
-            .delegates(jpaItemWriter, logItemWriter) // 먼저 실행될 jpaItemWriter, 다음으로 실행될 logItemWriter
+            .delegates(personItemWriter, logItemWriter) // 먼저 실행될 personItemWriter, 다음으로 실행될 logItemWriter
             .build();
         itemWriter.afterPropertiesSet();
     
         return itemWriter;
     }
     
-    private ItemReader<Person> itemReader() throws Exception {
+    private ItemWriter<Person> personItemWriter(String writerType) throws Exception {
     
-        DelimitedLineTokenizer lineTokenizer = new DelimitedLineTokenizer();
-        lineTokenizer.setNames("name", "age", "address");
-        
-        DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>();
-        lineMapper.setLineTokenizer(lineTokenizer);
-        lineMapper.setFieldSetMapper(fieldSet ->
-            Person.builder()
-                .name(fieldSet.readString(0))
-                .age(fieldSet.readString(1))
-                .address(fieldSet.readString(2))
-                .build()
-        );
+        if ("bulk".equalsIgnoreCase(writerType)) {
+            // writerType=bulk: processor를 통과한 Person을 임시 CSV 파일에 기록하고, savePersonBulkLoadStep에서 한 번에 저장한다.
+            IdBlockAllocator idBlockAllocator = new IdBlockAllocator(dataSource);
     
-        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
-            .name("savePersonItemReader")
-            .encoding("UTF-8")
-            .linesToSkip(1)
-            .resource(new ClassPathResource("person.csv"))
-            .lineMapper(lineMapper)
+            return new BulkLoadStagingItemWriter<>("savePersonBulkLoad", PERSON_COLUMNS, person -> new Object[] {
+                idBlockAllocator.nextId("person"), person.getName(), person.getAge(), person.getAddress()
+            });
+        }
+    
+        if ("stateless".equalsIgnoreCase(writerType)) {
+            // writerType=stateless: 영속성 컨텍스트 없이 StatelessSession으로 INSERT 한다. (merge 전 SELECT가 없다.)
+            StatelessSessionItemWriter<Person> statelessItemWriter = StatelessSessionItemWriter.insert(entityManagerFactory, dataSource);
+            statelessItemWriter.afterPropertiesSet();
+    
+            return statelessItemWriter;
+        }
+    
+        JpaItemWriter<Person> jpaItemWriter = new JpaItemWriterBuilder<Person>()
+            .entityManagerFactory(entityManagerFactory)
             .build();
-        itemReader.afterPropertiesSet();
+        jpaItemWriter.afterPropertiesSet();
     
-        return itemReader;
+        return jpaItemWriter;
     }
 }
@@ -0,0 +1,48 @@
+package spring.study.batch.part4;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+
+import javax.sql.DataSource;
+
+/**
+ * 마지막으로 등급을 판단한 이후 total_amount가 저장/변경된 회원(users.level_dirty = TRUE)만 읽는다.
+ * level_dirty는 total_amount를 저장하는 구문(회원 INSERT, UserTotalAmountRebuildTasklet의 UPDATE)에서 함께 설정되기 때문에
+ * commit된 변경만 보이고, id 할당 순서와 관계없이 누락되지 않는다. (orders.id watermark는 thread 별 id block 때문에 commit 순서와 일치하지 않는다.)
+ * 읽은 회원의 level_dirty는 IncrementalLevelUpItemWriter가 같은 chunk 트랜잭션에서 해제한다.
+ *
+ * - fullScan=true인 경우 전체 회원을 읽는다. (level_dirty 컬럼이 추가되기 전에 저장된 회원이 있으면 한 번 실행한다.)
+ * - 처리한 회원은 더 이상 조회되지 않기 때문에 읽은 건수를 저장하지 않는다. (재시작 시 남은 회원만 다시 조회한다.)
+ */
+@Slf4j
+public class IncrementalLevelUpItemReader extends JdbcCursorItemReader<LevelUpCandidate> implements StepExecutionListener {
+
+    private static final String FULL_SCAN_SQL = "SELECT id, level, total_amount FROM users ORDER BY id";
+    private static final String DIRTY_SQL = "SELECT id, level, total_amount FROM users WHERE level_dirty = TRUE ORDER BY id";
+
+    public IncrementalLevelUpItemReader(DataSource dataSource) {
+        this.setDataSource(dataSource);
+        this.setSql(DIRTY_SQL);
+        this.setRowMapper(LevelUpCandidate.ROW_MAPPER);
+        this.setSaveState(false);
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+
+        boolean fullScan = Boolean.parseBoolean(stepExecution.getJobParameters().getString("fullScan"));
+
+        log.info("{} 회원 등급 상향", fullScan ? "전체" : "total_amount가 변경된");
+
+        this.setSql(fullScan ? FULL_SCAN_SQL : DIRTY_SQL);
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+
+        return null;
+    }
+}
@@ -0,0 +1,51 @@
+package spring.study.batch.part4;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * IncrementalLevelUpItemReader가 읽은 회원을 chunk 단위로 등급 판단하고, 등급 상향 대상과 관계없이 읽은 모든 회원의 level_dirty를 해제한다.
+ * (processor에서 null로 걸러진 회원은 writer로 전달되지 않기 때문에 판단을 writer에서 한다.)
+ *
+ * level_dirty는 읽은 시점의 total_amount가 그대로인 경우에만 해제한다.
+ * 읽은 후에 total_amount가 다시 변경되었다면 다음 실행에서 다시 판단한다.
+ */
+public class IncrementalLevelUpItemWriter implements ItemWriter<LevelUpCandidate> {
+
+    private static final String CLEAR_SQL = "UPDATE users SET level_dirty = FALSE WHERE id = ? AND total_amount = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcLevelUpItemWriter levelUpItemWriter;
+    private final LevelRule levelRule;
+
+    public IncrementalLevelUpItemWriter(DataSource dataSource, LevelRule levelRule) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.levelUpItemWriter = new JdbcLevelUpItemWriter(dataSource);
+        this.levelRule = levelRule;
+    }
+
+    @Override
+    public void write(List<? extends LevelUpCandidate> candidates) throws Exception {
+
+        List<LevelUpDecision> decisions = candidates.stream()
+            .map(candidate -> LevelUpDecision.of(candidate, levelRule))
+            .filter(Objects::nonNull)
+            .collect(Collectors.toList());
+
+        if (!decisions.isEmpty()) levelUpItemWriter.write(decisions);
+
+        List<Object[]> parameters = new ArrayList<>(candidates.size());
+
+        for (LevelUpCandidate candidate : candidates) {
+            parameters.add(new Object[] { candidate.getId(), candidate.getTotalAmount() });
+        }
+
+        jdbcTemplate.batchUpdate(CLEAR_SQL, parameters);
+    }
+}
@@ -0,0 +1,53 @@
+package spring.study.batch.part4;
+
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * processor가 계산한 LevelUpDecision을 chunk 단위로 하나의 JDBC batch로 저장한다. (Entity를 수정하거나 등급을 다시 계산하지 않는다.)
+ * MySQL은 JDBC URL에 rewriteBatchedStatements=true를 설정해야 batch가 하나의 구문으로 재작성된다. (application-mysql.yml 참고)
+ */
+public class JdbcLevelUpItemWriter implements ItemWriter<LevelUpDecision> {
+
+    private static final String UPDATE_SQL = "UPDATE users SET level = ?, updated_date = ? WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcLevelUpItemWriter(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    @Override
+    public void write(List<? extends LevelUpDecision> decisions) throws Exception {
+
+        Date updatedDate = Date.valueOf(LocalDate.now()); // chunk 당 한 번만 계산한다.
+
+        jdbcTemplate.batchUpdate(UPDATE_SQL, new BatchPreparedStatementSetter() {
+
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+
+                LevelUpDecision decision = decisions.get(i);
+
+                ps.setString(1, decision.getNewLevel().name());
+                ps.setDate(2, updatedDate);
+                ps.setLong(3, decision.getId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return decisions.size();
+            }
+        });
+
+        LevelUpTally.add(decisions); // 등급별 건수는 chunk가 commit된 후에 StepExecutionContext에 더해진다.
+    }
+}
@@ -0,0 +1,176 @@
+package spring.study.batch.part4;
+
+import io.micrometer.core.instrument.util.StringUtils;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 주문 금액 합계로 회원 등급을 결정하는 규칙
+ * 등급별 최소 금액을 낮은 등급부터 정렬된 long 배열로 가지고 있고, 등급은 배열의 위치(rank)를 byte 코드로 사용한다.
+ *
+ * - 기본값: User.Level에 정의된 기준 금액
+ * - 설정값: "SILVER:200000,GOLD:300000,VIP:500000" 형식의 문자열
+ * - 테이블: level_rule(level, min_amount) (level_rule.sql 참고)
+ */
+public class LevelRule {
+
+    public static final String TABLE_SOURCE = "table"; // levelRules JobParameter를 table로 전달하면 level_rule 테이블에서 읽는다.
+
+    private static final LevelRule DEFAULT = LevelRule.defaultRule();
+
+    private final User.Level[] levels; // rank 순서의 등급 (levels[0]은 기본 등급)
+    private final long[] minAmounts; // rank 별 최소 주문 금액 (오름차순)
+    private final byte[] ranks; // Level.ordinal() → rank
+
+    protected LevelRule(Map<User.Level, Long> minAmountByLevel) {
+
+        this.levels = minAmountByLevel.keySet().stream()
+            .sorted((a, b) -> Long.compare(minAmountByLevel.get(a), minAmountByLevel.get(b)))
+            .toArray(User.Level[]::new);
+        this.minAmounts = new long[levels.length];
+        this.ranks = new byte[User.Level.values().length];
+
+        Arrays.fill(ranks, (byte) -1);
+
+        for (int rank = 0; rank < levels.length; rank++) {
+
+            minAmounts[rank] = minAmountByLevel.get(levels[rank]);
+            ranks[levels[rank].ordinal()] = (byte) rank;
+
+            if (rank > 0 && minAmounts[rank] == minAmounts[rank - 1]) {
+                throw new IllegalArgumentException("등급별 최소 금액은 서로 달라야 합니다: " + minAmountByLevel);
+            }
+        }
+
+        if (levels.length != User.Level.values().length) {
+            throw new IllegalArgumentException("모든 등급의 최소 금액이 필요합니다: " + minAmountByLevel);
+        }
+    }
+
+    public static LevelRule defaults() {
+
+        return DEFAULT;
+    }
+
+    /**
+     * levelRules JobParameter 값으로 규칙을 만든다. (값이 없으면 기본값, table이면 level_rule 테이블)
+     */
+    public static LevelRule of(String levelRules, JdbcTemplate jdbcTemplate) {
+
+        if (StringUtils.isEmpty(levelRules)) return DEFAULT;
+
+        if (TABLE_SOURCE.equalsIgnoreCase(levelRules.trim())) return LevelRule.fromTable(jdbcTemplate);
+
+        return LevelRule.parse(levelRules);
+    }
+
+    public static LevelRule parse(String levelRules) {
+
+        Map<User.Level, Long> minAmountByLevel = new EnumMap<>(User.Level.class);
+        minAmountByLevel.put(User.Level.NORMAL, 0L); // 기본 등급은 생략할 수 있다.
+
+        for (String rule : levelRules.split(",")) {
+
+            String[] tokens = rule.split(":");
+
+            if (tokens.length != 2) throw new IllegalArgumentException("등급 규칙 형식이 잘못되었습니다: " + rule);
+
+            minAmountByLevel.put(User.Level.valueOf(tokens[0].trim().toUpperCase()), Long.parseLong(tokens[1].trim()));
+        }
+
+        return new LevelRule(minAmountByLevel);
+    }
+
+    public static LevelRule fromTable(JdbcTemplate jdbcTemplate) {
+
+        Map<User.Level, Long> minAmountByLevel = new EnumMap<>(User.Level.class);
+        minAmountByLevel.put(User.Level.NORMAL, 0L);
+
+        jdbcTemplate.query("SELECT level, min_amount FROM level_rule", rs -> {
+            minAmountByLevel.put(User.Level.valueOf(rs.getString(1)), rs.getLong(2));
+        });
+
+        return new LevelRule(minAmountByLevel);
+    }
+
+    private static LevelRule defaultRule() {
+
+        Map<User.Level, Long> minAmountByLevel = new EnumMap<>(User.Level.class);
+        minAmountByLevel.put(User.Level.NORMAL, 0L);
+
+        for (User.Level level : User.Level.values()) {
+            // nextAmount는 다음 등급의 최소 금액이다. (VIP는 다음 등급이 없다.)
+            if (Objects.nonNull(level.getNextLevel())) minAmountByLevel.put(level.getNextLevel(), (long) level.getNextAmount());
+        }
+
+        return new LevelRule(minAmountByLevel);
+    }
+
+    public User.Level classify(long totalAmount) {
+
+        return levels[this.rank(totalAmount)];
+    }
+
+    /**
+     * chunk의 주문 금액 합계를 한 번에 등급 코드(rank)로 변환한다. 호출하는 쪽에서 배열을 전달하기 때문에 객체를 생성하지 않는다.
+     */
+    public void classify(long[] totalAmounts, byte[] codes, int length) {
+
+        for (int i = 0; i < length; i++) {
+            codes[i] = (byte) this.rank(totalAmounts[i]);
+        }
+    }
+
+    public boolean availableLevelUp(User.Level level, long totalAmount) {
+
+        if (Objects.isNull(level)) return false;
+
+        return this.rank(totalAmount) > ranks[level.ordinal()]; // 최고 등급은 더 높은 rank가 없기 때문에 항상 false
+    }
+
+    public User.Level levelOf(byte code) {
+
+        return levels[code];
+    }
+
+    public byte codeOf(User.Level level) {
+
+        return ranks[level.ordinal()];
+    }
+
+    public int size() {
+
+        return levels.length;
+    }
+
+    public long minAmountOf(int rank) {
+
+        return minAmounts[rank];
+    }
+
+    private int rank(long totalAmount) {
+
+        int rank = 0;
+
+        while (rank + 1 < minAmounts.length && totalAmount >= minAmounts[rank + 1]) rank++; // 등급 수가 적기 때문에 순차 비교가 가장 빠르다.
+
+        return rank;
+    }
+
+    @Override
+    public String toString() {
+
+        StringBuilder builder = new StringBuilder();
+
+        for (int rank = 0; rank < levels.length; rank++) {
+            if (rank > 0) builder.append(',');
+            builder.append(levels[rank]).append(':').append(minAmounts[rank]);
+        }
+
+        return builder.toString();
+    }
+}
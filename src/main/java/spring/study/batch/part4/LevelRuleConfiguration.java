@@ -0,0 +1,30 @@
+package spring.study.batch.part4;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class LevelRuleConfiguration {
+
+    private final DataSource dataSource;
+
+    @Bean
+    @StepScope // Job 실행마다 levelRules JobParameter로 등급 기준을 바꿀 수 있도록 StepScope로 설정 (partition, async thread에서도 사용 가능)
+    public LevelRule levelRule(@Value("#{jobParameters[levelRules]}") String levelRules) {
+
+        LevelRule levelRule = LevelRule.of(levelRules, new JdbcTemplate(dataSource));
+
+        log.info("등급 기준: {}", levelRule);
+
+        return levelRule;
+    }
+}
@@ -0,0 +1,36 @@
+package spring.study.batch.part4;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.util.Objects;
+
+/**
+ * 등급 상향 판단에 필요한 값만 담는 projection (User/Orders Entity를 만들지 않는다.)
+ */
+@Getter
+@AllArgsConstructor
+public class LevelUpCandidate {
+
+    // SELECT id, level, 주문 금액 합계 순서로 조회한 결과를 매핑한다.
+    public static final RowMapper<LevelUpCandidate> ROW_MAPPER = (rs, rowNum) -> {
+
+        String level = rs.getString(2);
+
+        return new LevelUpCandidate(
+            rs.getLong(1),
+            Objects.isNull(level) ? null : User.Level.valueOf(level),
+            rs.getLong(3)
+        );
+    };
+
+    private final long id;
+    private final User.Level level;
+    private final long totalAmount;
+
+    public boolean availableLevelUp(LevelRule levelRule) {
+
+        return levelRule.availableLevelUp(this.level, this.totalAmount);
+    }
+}
@@ -0,0 +1,39 @@
+package spring.study.batch.part4;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * processor가 계산한 등급 상향 결과 (불변 객체)
+ * writer는 이 값을 그대로 저장만 하기 때문에 Entity를 수정하거나 주문 금액을 다시 계산하지 않는다.
+ * 여러 thread에서 처리하거나 chunk 안에서 순서를 바꾸어 저장해도 안전하다.
+ */
+@Getter
+@AllArgsConstructor
+public class LevelUpDecision {
+
+    private final long id;
+    private final User.Level oldLevel;
+    private final User.Level newLevel;
+    private final long totalAmount;
+
+    /**
+     * 등급 상향 대상이 아니면 null을 반환한다. (ItemProcessor에서 null은 writer로 전달되지 않는다.)
+     */
+    public static LevelUpDecision of(User user, LevelRule levelRule) {
+
+        return LevelUpDecision.of(user.getId(), user.getLevel(), user.getTotalAmount(), levelRule);
+    }
+
+    public static LevelUpDecision of(LevelUpCandidate candidate, LevelRule levelRule) {
+
+        return LevelUpDecision.of(candidate.getId(), candidate.getLevel(), candidate.getTotalAmount(), levelRule);
+    }
+
+    private static LevelUpDecision of(long id, User.Level level, long totalAmount, LevelRule levelRule) {
+
+        if (!levelRule.availableLevelUp(level, totalAmount)) return null;
+
+        return new LevelUpDecision(id, level, levelRule.classify(totalAmount), totalAmount);
+    }
+}
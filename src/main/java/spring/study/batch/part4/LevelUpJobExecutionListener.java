@@ -1,19 +1,20 @@
 package spring.study.batch.part4;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
 
-import java.time.LocalDate;
-import java.util.List;
+import java.util.Date;
+import java.util.Objects;
 
+/**
+ * Step의 read/write 건수와 writer가 집계한 등급별 건수(LevelUpTally)로 결과를 출력한다.
+ * users 테이블을 다시 조회하지 않기 때문에 회원 수와 관계없이 바로 끝난다.
+ */
 @Slf4j
-@RequiredArgsConstructor
 public class LevelUpJobExecutionListener implements JobExecutionListener {
 
-    private final UserRepository userRepository;
-
     @Override
     public void beforeJob(JobExecution jobExecution) {
 
@@ -22,12 +23,54 @@ public class LevelUpJobExecutionListener implements JobExecutionListener {
     @Override
     public void afterJob(JobExecution jobExecution) {
 
-        List<User> users = userRepository.findAllByUpdatedDate(LocalDate.now());
+        long time = millisBetween(jobExecution.getStartTime(), jobExecution.getEndTime()); // 종료 시간에서 시작 시간을 빼면 소요시간이 나온다.
 
-        long time = jobExecution.getEndTime().getTime() - jobExecution.getStartTime().getTime(); // 종료 시간에서 시작 시간을 빼면 쇼오시간이 나온다.
+        long[] counts = new long[User.Level.values().length];
+        long total = 0;
 
         log.info("회원등급 업데이트 배치 프로그램");
         log.info("--------------------------");
-        log.info("총 데이터 처리 {}건, 처리 시간 {}millis", users.size(), time);
+
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+
+            long stepTime = millisBetween(stepExecution.getStartTime(), stepExecution.getEndTime());
+            long items = Math.max(stepExecution.getReadCount(), stepExecution.getWriteCount()); // tasklet은 read 건수가 없다.
+
+            // partition step은 worker(partition) 별로 출력된다.
+            log.info("{}: read {}건, filter {}건, write {}건, 처리 시간 {}millis, {}건/sec",
+                stepExecution.getStepName(),
+                stepExecution.getReadCount(),
+                stepExecution.getFilterCount(),
+                stepExecution.getWriteCount(),
+                stepTime,
+                perSecond(items, stepTime)
+            );
+
+            for (User.Level level : User.Level.values()) {
+                long count = LevelUpTally.countOf(stepExecution, level);
+                counts[level.ordinal()] += count;
+                total += count;
+            }
+        }
+
+        log.info("--------------------------");
+
+        for (User.Level level : User.Level.values()) {
+            if (counts[level.ordinal()] > 0) log.info("{} 등급 상향 {}건", level, counts[level.ordinal()]);
+        }
+
+        log.info("총 데이터 처리 {}건, 처리 시간 {}millis, {}건/sec", total, time, perSecond(total, time));
+    }
+
+    private static long millisBetween(Date startTime, Date endTime) {
+
+        if (Objects.isNull(startTime)) return 0;
+
+        return (Objects.isNull(endTime) ? System.currentTimeMillis() : endTime.getTime()) - startTime.getTime();
+    }
+
+    private static long perSecond(long items, long millis) {
+
+        return millis == 0 ? items : items * 1_000 / millis;
     }
 }
@@ -0,0 +1,17 @@
+package spring.study.batch.part4;
+
+import io.micrometer.core.instrument.util.StringUtils;
+
+public enum LevelUpMode {
+    JPA, // User Entity를 읽어서 한 건씩 등급을 상향하는 기본 방식
+    PROJECTION, // User/Orders Entity 대신 (id, level, total_amount)만 JDBC cursor로 읽는 방식
+    SQL, // DB에서 id 범위 단위로 users.total_amount를 비교하여 UPDATE 문 하나로 등급을 상향하는 방식
+    INCREMENTAL; // total_amount가 저장/변경된 후 등급을 판단하지 않은 회원(level_dirty)만 PROJECTION 방식으로 처리 (fullScan=true이면 전체)
+
+    public static LevelUpMode of(String value) {
+
+        if (StringUtils.isEmpty(value)) return JPA; // JobParameters에 levelUpMode가 없으면 기존 방식으로 동작
+
+        return LevelUpMode.valueOf(value.trim().toUpperCase());
+    }
+}
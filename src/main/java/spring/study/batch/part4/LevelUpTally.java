@@ -0,0 +1,84 @@
+package spring.study.batch.part4;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * writer(SQL 모드는 SqlLevelUpTasklet)가 저장한 등급 상향 건수를 등급별로 StepExecutionContext에 집계한다.
+ * Job이 끝난 뒤 users 테이블을 다시 조회하지 않고 LevelUpJobExecutionListener가 이 값으로 결과를 출력한다.
+ */
+public final class LevelUpTally {
+
+    private static final String KEY_PREFIX = "levelUp.count.";
+
+    private LevelUpTally() {
+    }
+
+    /**
+     * 현재 Step의 chunk 트랜잭션이 commit된 후에 더한다. (rollback 되어 다시 처리되는 chunk가 중복 집계되지 않는다.)
+     */
+    public static void add(List<? extends LevelUpDecision> decisions) {
+
+        long[] counts = new long[User.Level.values().length];
+
+        for (LevelUpDecision decision : decisions) {
+            counts[decision.getNewLevel().ordinal()]++;
+        }
+
+        LevelUpTally.add(counts);
+    }
+
+    /**
+     * 등급(User.Level.ordinal()) 별 건수를 더한다. (SqlLevelUpTasklet과 같이 LevelUpDecision 없이 DB에서 건수를 센 경우)
+     */
+    public static void add(long[] counts) {
+
+        StepContext context = StepSynchronizationManager.getContext();
+
+        if (Objects.isNull(context) || Arrays.stream(counts).allMatch(count -> count == 0)) return;
+
+        StepExecution stepExecution = context.getStepExecution();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            LevelUpTally.add(stepExecution, counts);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+            @Override
+            public void afterCommit() {
+                LevelUpTally.add(stepExecution, counts);
+            }
+        });
+    }
+
+    private static void add(StepExecution stepExecution, long[] counts) {
+
+        synchronized (stepExecution) { // multi-thread step은 여러 thread가 같은 StepExecution에 집계한다.
+
+            ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+            for (User.Level level : User.Level.values()) {
+
+                if (counts[level.ordinal()] == 0) continue;
+
+                String key = KEY_PREFIX + level.name();
+                executionContext.putLong(key, executionContext.getLong(key, 0) + counts[level.ordinal()]);
+            }
+        }
+    }
+
+    public static long countOf(StepExecution stepExecution, User.Level level) {
+
+        return stepExecution.getExecutionContext().getLong(KEY_PREFIX + level.name(), 0);
+    }
+}
@@ -1,104 +1,162 @@
 package spring.study.batch.part4;
 
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.StepContribution;
 import org.springframework.batch.core.scope.context.ChunkContext;
 import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.repeat.RepeatStatus;
-import spring.study.batch.part5.Orders;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import spring.study.batch.part5.DailyOrderRollupAccumulator;
+import spring.study.batch.part6.IdBlockAllocator;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.time.LocalDate;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 
-@RequiredArgsConstructor
+/**
+ * 등급별(NORMAL, SILVER, GOLD, VIP) 테스트 회원과 주문을 JDBC batch로 저장한다.
+ * 한 번의 execute() 호출이 BATCH_SIZE명의 회원(= 하나의 트랜잭션)을 저장하기 때문에 전체 건수와 관계없이 메모리 사용량이 일정하고,
+ * 저장한 건수를 StepExecutionContext에 기록하여 재시작 시 이어서 저장한다.
+ *
+ * - seedSize JobParameter: 등급별 회원 수 (기본값 10,000)
+ * - 회원/주문 id를 IdBlockAllocator로 미리 할당받아 orders.user_id를 채우기 때문에 회원마다 round-trip이 발생하지 않는다.
+ * - 저장한 주문을 같은 트랜잭션에서 daily_order_rollup에 더한다.
+ */
+@Slf4j
 public class SaveUserTasklet implements Tasklet {
-    
-    private final int SIZE = 10_000;
-    
-    private final UserRepository userRepository;
-    
+
+    private static final int DEFAULT_SIZE = 10_000;
+    private static final int BATCH_SIZE = 1_000;
+    private static final String SAVED_KEY = "saveUser.saved";
+
+    private static final String INSERT_USER_SQL = "INSERT INTO users (id, username, level, total_amount, level_dirty) VALUES (?, ?, ?, ?, TRUE)"; // 새 회원은 INCREMENTAL 모드의 등급 판단 대상
+    private static final String INSERT_ORDER_SQL = "INSERT INTO orders (id, item_name, amount, created_date, user_id, rollup_dirty) VALUES (?, ?, ?, ?, ?, TRUE)"; // daily_order_rollup을 함께 갱신해도 dailyOrderRollupJob이 그 날짜를 다시 확인한다.
+
+    // 등급 별 주문 금액, 주문 일자 (index가 같은 값끼리 하나의 등급 그룹)
+    private static final int[] AMOUNTS = { 1_000, 200_000, 300_000, 500_000 };
+    private static final LocalDate[] CREATED_DATES = {
+        LocalDate.of(2020, 11, 1),
+        LocalDate.of(2020, 11, 2),
+        LocalDate.of(2020, 11, 3),
+        LocalDate.of(2020, 11, 4)
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IdBlockAllocator idBlockAllocator;
+
+    public SaveUserTasklet(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.idBlockAllocator = new IdBlockAllocator(dataSource);
+    }
+
     @Override
     public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
-    
-        List<User> users = this.createUsers();
-    
-        Collections.shuffle(users); // user를 섞는다.
-    
-        userRepository.saveAll(users);
-        
-        return RepeatStatus.FINISHED;
+
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+
+        long total = (long) this.getSize(chunkContext) * AMOUNTS.length;
+        long saved = executionContext.getLong(SAVED_KEY, 0);
+
+        if (saved >= total) return RepeatStatus.FINISHED;
+
+        int count = (int) Math.min(BATCH_SIZE, total - saved);
+        long[] sequences = this.shuffledSequences(saved, count);
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            this.insertOrders(connection, sequences, this.insertUsers(connection, sequences));
+            return null;
+        });
+
+        contribution.incrementWriteCount(count);
+        executionContext.putLong(SAVED_KEY, saved + count); // 트랜잭션이 commit될 때 함께 저장된다.
+
+        log.debug("회원 {} / {}명 저장", saved + count, total);
+
+        return saved + count >= total ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
     }
-    
-    private List<User> createUsers() {
-    
-        List<User> users = new ArrayList<>();
-    
-        for (int i = 0; i < SIZE; i++) {
-            // NORMAL
-            users.add(
-                User.builder()
-                    .orders(Collections.singletonList(
-                        Orders.builder()
-                            .itemName("item" + i)
-                            .amount(1_000)
-                            .createdDate(LocalDate.of(2020, 11, 1))
-                            .build()
-                    ))
-                    .username("test username" + i)
-                    .build()
-            );
+
+    private int getSize(ChunkContext chunkContext) {
+
+        Object seedSize = chunkContext.getStepContext().getJobParameters().get("seedSize");
+
+        return Objects.isNull(seedSize) ? DEFAULT_SIZE : Integer.parseInt(seedSize.toString());
+    }
+
+    /**
+     * 등급 그룹을 번갈아 가며 배정하고(round-robin) batch 안에서 순서를 섞는다. (등급별로 id가 몰리지 않도록)
+     */
+    private long[] shuffledSequences(long from, int count) {
+
+        long[] sequences = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            sequences[i] = from + i;
         }
-    
-        for (int i = 0; i < SIZE; i++) {
-            // SILVER 등급
-            users.add(
-                User.builder()
-                    .orders(Collections.singletonList(
-                        Orders.builder()
-                            .itemName("item" + i)
-                            .amount(200_000)
-                            .createdDate(LocalDate.of(2020, 11, 2))
-                            .build()
-                    ))
-                    .username("test username" + i)
-                    .build()
-            );
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int i = count - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long temp = sequences[i];
+            sequences[i] = sequences[j];
+            sequences[j] = temp;
         }
-    
-        for (int i = 0; i < SIZE; i++) {
-            // GOLD 등급
-            users.add(
-                User.builder()
-                    .orders(Collections.singletonList(
-                        Orders.builder()
-                            .itemName("item" + i)
-                            .amount(300_000)
-                            .createdDate(LocalDate.of(2020, 11, 3))
-                            .build()
-                    ))
-                    .username("test username" + i)
-                    .build()
-            );
+
+        return sequences;
+    }
+
+    private long[] insertUsers(Connection connection, long[] sequences) throws SQLException {
+
+        long[] userIds = new long[sequences.length];
+
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_USER_SQL)) {
+
+            for (int i = 0; i < sequences.length; i++) {
+
+                userIds[i] = idBlockAllocator.nextId("users");
+
+                ps.setLong(1, userIds[i]);
+                ps.setString(2, "test username" + (sequences[i] / AMOUNTS.length));
+                ps.setString(3, User.Level.NORMAL.name());
+                ps.setLong(4, AMOUNTS[(int) (sequences[i] % AMOUNTS.length)]); // 주문이 하나이기 때문에 주문 금액이 합계
+                ps.addBatch();
+            }
+
+            ps.executeBatch();
         }
-    
-        for (int i = 0; i < SIZE; i++) {
-            // VIP 등급
-            users.add(
-                User.builder()
-                    .orders(Collections.singletonList(
-                        Orders.builder()
-                            .itemName("item" + i)
-                            .amount(500_000)
-                            .createdDate(LocalDate.of(2020, 11, 4))
-                            .build()
-                    ))
-                    .username("test username" + i)
-                    .build()
-            );
+
+        return userIds;
+    }
+
+    private void insertOrders(Connection connection, long[] sequences, long[] userIds) throws SQLException {
+
+        DailyOrderRollupAccumulator rollup = new DailyOrderRollupAccumulator();
+
+        try (PreparedStatement ps = connection.prepareStatement(INSERT_ORDER_SQL)) {
+
+            for (int i = 0; i < sequences.length; i++) {
+
+                int group = (int) (sequences[i] % AMOUNTS.length);
+                rollup.add(CREATED_DATES[group], AMOUNTS[group]);
+
+                ps.setLong(1, idBlockAllocator.nextId("orders"));
+                ps.setString(2, "item" + (sequences[i] / AMOUNTS.length));
+                ps.setInt(3, AMOUNTS[group]);
+                ps.setDate(4, Date.valueOf(CREATED_DATES[group]));
+                ps.setLong(5, userIds[i]);
+                ps.addBatch();
+            }
+
+            ps.executeBatch();
         }
-        
-        return users;
+
+        rollup.flush(connection);
     }
 }
@@ -0,0 +1,149 @@
+package spring.study.batch.part4;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * 회원 Entity를 읽지 않고 DB에서 id 범위 단위로 users.total_amount를 비교하여 등급을 상향한다. (등급 기준은 LevelRule을 CASE 문으로 변환하여 사용)
+ * 한 번의 execute() 호출이 하나의 id 범위(= 하나의 트랜잭션)를 처리하고,
+ * 처리한 마지막 id를 StepExecutionContext에 저장하기 때문에 재시작 시 이어서 처리할 수 있다.
+ */
+@Slf4j
+public class SqlLevelUpTasklet implements Tasklet {
+
+    private static final String LAST_ID_KEY = "sqlLevelUp.lastId";
+    private static final String MAX_ID_KEY = "sqlLevelUp.maxId";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LevelRule levelRule;
+    private final int rangeSize; // 한 번의 UPDATE 문이 처리할 id 범위의 크기
+
+    private String updateSql;
+    private String countSql;
+
+    public SqlLevelUpTasklet(DataSource dataSource, LevelRule levelRule, int rangeSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.levelRule = levelRule;
+        this.rangeSize = rangeSize;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+
+        if (!executionContext.containsKey(MAX_ID_KEY)) {
+
+            Map<String, Object> range = jdbcTemplate.queryForMap("SELECT MIN(id) AS min_id, MAX(id) AS max_id FROM users");
+
+            if (Objects.isNull(range.get("max_id"))) return RepeatStatus.FINISHED; // 회원이 없는 경우
+
+            executionContext.putLong(LAST_ID_KEY, ((Number) range.get("min_id")).longValue() - 1);
+            executionContext.putLong(MAX_ID_KEY, ((Number) range.get("max_id")).longValue());
+        }
+
+        long lastId = executionContext.getLong(LAST_ID_KEY);
+        long maxId = executionContext.getLong(MAX_ID_KEY);
+
+        if (lastId >= maxId) return RepeatStatus.FINISHED;
+
+        long start = lastId + 1;
+        long end = Math.min(start + rangeSize - 1, maxId);
+
+        long[] counts = this.countByNextLevel(start, end); // UPDATE 전에 같은 조건으로 상향될 등급별 건수를 센다.
+
+        int updated = jdbcTemplate.update(this.getUpdateSql(), Date.valueOf(LocalDate.now()), start, end);
+
+        contribution.incrementWriteCount(updated);
+        LevelUpTally.add(counts); // 등급별 건수는 트랜잭션이 commit된 후에 StepExecutionContext에 더해진다.
+        executionContext.putLong(LAST_ID_KEY, end); // 트랜잭션이 commit될 때 함께 저장된다.
+
+        log.debug("users {} ~ {} 등급 상향 {}건", start, end, updated);
+
+        return end >= maxId ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+
+    private long[] countByNextLevel(long start, long end) {
+
+        if (Objects.isNull(countSql)) countSql = createCountSql(levelRule);
+
+        long[] counts = new long[User.Level.values().length];
+
+        jdbcTemplate.query(countSql, rs -> {
+            counts[User.Level.valueOf(rs.getString(1)).ordinal()] += rs.getLong(2);
+        }, start, end);
+
+        return counts;
+    }
+
+    private String getUpdateSql() {
+
+        if (Objects.isNull(updateSql)) updateSql = createUpdateSql(levelRule);
+
+        return updateSql;
+    }
+
+    /**
+     * createUpdateSql()과 같은 조건의 회원을 상향될 등급별로 센다.
+     */
+    static String createCountSql(LevelRule levelRule) {
+
+        String nextLevel = nextLevelCase(levelRule);
+
+        return "SELECT " + nextLevel + ", COUNT(*) FROM users u"
+            + " WHERE u.id BETWEEN ? AND ? AND " + availableLevelUpCondition(levelRule)
+            + " GROUP BY " + nextLevel;
+    }
+
+    /**
+     * 주문을 다시 집계하지 않고 users.total_amount(주문 저장 시 함께 갱신되는 집계 컬럼)로 판단한다.
+     * 다른 테이블과 JOIN 하지 않기 때문에 H2, MySQL 모두 같은 UPDATE 문을 사용한다.
+     */
+    static String createUpdateSql(LevelRule levelRule) {
+
+        return "UPDATE users u SET level = " + nextLevelCase(levelRule) + ", updated_date = ?"
+            + " WHERE u.id BETWEEN ? AND ? AND " + availableLevelUpCondition(levelRule);
+    }
+
+    /**
+     * LevelRule.availableLevelUp()과 동일한 조건: 현재 등급의 다음 등급 최소 금액 이상인 경우
+     * (최고 등급 또는 level이 없는 경우 CASE 결과가 NULL이 되어 제외된다.)
+     */
+    private static String availableLevelUpCondition(LevelRule levelRule) {
+
+        StringBuilder condition = new StringBuilder("u.total_amount >= CASE u.level");
+
+        for (int rank = 0; rank + 1 < levelRule.size(); rank++) {
+            condition.append(" WHEN '").append(levelRule.levelOf((byte) rank).name())
+                .append("' THEN ").append(levelRule.minAmountOf(rank + 1));
+        }
+
+        return condition.append(" END").toString();
+    }
+
+    /**
+     * LevelRule.classify()와 동일한 규칙 (최소 금액이 높은 등급부터 비교한다.)
+     */
+    private static String nextLevelCase(LevelRule levelRule) {
+
+        StringBuilder nextLevel = new StringBuilder("CASE");
+
+        for (int rank = levelRule.size() - 1; rank > 0; rank--) {
+            nextLevel.append(" WHEN u.total_amount >= ").append(levelRule.minAmountOf(rank))
+                .append(" THEN '").append(levelRule.levelOf((byte) rank).name()).append("'");
+        }
+
+        return nextLevel.append(" ELSE u.level END").toString();
+    }
+}
@@ -1,7 +1,9 @@
 package spring.study.batch.part4;
 
 import lombok.*;
+import org.hibernate.annotations.GenericGenerator;
 import spring.study.batch.part5.Orders;
+import spring.study.batch.part6.PooledIdGenerator;
 
 import javax.persistence.*;
 import java.time.LocalDate;
@@ -9,13 +11,15 @@ import java.util.List;
 import java.util.Objects;
 
 @Entity(name = "users")
+@Table(indexes = @Index(name = "idx_users_level_dirty", columnList = "level_dirty")) // INCREMENTAL 모드가 등급 판단 대상만 조회한다.
 @Getter
 @NoArgsConstructor
 @AllArgsConstructor
 public class User {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "pooled") // IDENTITY는 INSERT batch가 되지 않기 때문에 id를 미리 할당받는다.
+    @GenericGenerator(name = "pooled", strategy = PooledIdGenerator.STRATEGY)
     private long id;
     
     private String username;
@@ -23,33 +27,43 @@ public class User {
     @Enumerated(EnumType.STRING)
     private Level level = Level.NORMAL;
     
-    @OneToMany(cascade = CascadeType.PERSIST, fetch = FetchType.EAGER)
+    @OneToMany(cascade = CascadeType.PERSIST, fetch = FetchType.LAZY) // 등급 판단에 주문 목록이 필요 없기 때문에 LAZY로 조회
     @JoinColumn(name = "user_id")
     private List<Orders> orders;
     
+    private long totalAmount; // 주문 금액 합계 (주문을 저장할 때 함께 갱신되는 집계 컬럼)
+    
+    private boolean levelDirty = true; // totalAmount가 저장/변경된 후 아직 등급을 판단하지 않은 회원 (totalAmount를 갱신하는 구문에서 함께 true로 설정)
+    
     private LocalDate updatedDate;
     
     @Builder
     public User(String username, List<Orders> orders) {
         this.username = username;
         this.orders = orders;
+        this.totalAmount = Objects.isNull(orders) ? 0 : orders.stream()
+            .mapToLong(Orders::getAmount)
+            .sum();
     }
     
     public boolean availableLevelUp() {
         
-        return Level.availableLevelUp(this.getLevel(), this.getTotalAmount());
+        return this.availableLevelUp(LevelRule.defaults());
     }
     
-    private int getTotalAmount() {
+    public boolean availableLevelUp(LevelRule levelRule) {
         
-        return orders.stream()
-            .mapToInt(Orders::getAmount)
-            .sum();
+        return levelRule.availableLevelUp(this.getLevel(), this.getTotalAmount());
     }
     
     public Level levelUp() {
+        
+        return this.levelUp(LevelRule.defaults());
+    }
     
-        Level nextLevel = Level.getNextLevel(this.getTotalAmount());
+    public Level levelUp(LevelRule levelRule) {
+    
+        Level nextLevel = levelRule.classify(this.getTotalAmount());
     
         this.level = nextLevel;
         this.updatedDate = LocalDate.now();
@@ -57,6 +71,7 @@ public class User {
         return nextLevel;
     }
     
+    @Getter
     @AllArgsConstructor
     public enum Level {
         VIP(500_000, null),
@@ -64,26 +79,7 @@ public class User {
         SILVER(300_000, GOLD),
         NORMAL(200_000, SILVER);
         
-        private final int nextAmount;
+        private final int nextAmount; // 다음 등급으로 상향되기 위한 기본 기준 금액 (LevelRule.defaults()가 사용)
         private final Level nextLevel;
-    
-        private static boolean availableLevelUp(Level level, int totalAmount) {
-            
-            if (Objects.isNull(level)) return false;
-            
-            if (Objects.isNull(level.nextLevel)) return false; // VIP에 해당하는 경우 등급 상향할 level이 없음
-            
-            return totalAmount >= level.nextAmount;
-        }
-    
-        private static Level getNextLevel(int totalAmount) {
-            
-            if (totalAmount >= Level.VIP.nextAmount) return VIP;
-            if (totalAmount >= Level.GOLD.nextAmount) return GOLD.nextLevel; // VIP로 상향
-            if (totalAmount >= Level.SILVER.nextAmount) return SILVER.nextLevel; // GOLD로 상향
-            if (totalAmount >= Level.NORMAL.nextAmount) return NORMAL.nextLevel; // SILVER로 상향
-            
-            return NORMAL;
-        }
     }
 }
@@ -11,27 +11,30 @@ import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
 import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
 import org.springframework.batch.item.database.Order;
+import org.springframework.batch.item.database.builder.JdbcCursorItemReaderBuilder;
 import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
+import spring.study.batch.part5.DailyOrderRollupItemReader;
 import spring.study.batch.part5.JobParametersDecide;
 import spring.study.batch.part5.OrderStatistics;
+import spring.study.batch.part5.OrderStatisticsStreamItemReader;
+import spring.study.batch.part5.StatisticsMode;
+import spring.study.batch.part6.BinderFlatFileItemWriter;
+import spring.study.batch.part6.ChannelItemWriter;
+import spring.study.batch.part6.OutputFormat;
+import spring.study.batch.part6.QueryPlanGuardTasklet;
+import spring.study.batch.part6.ReaderQueryChecks;
+import spring.study.batch.part6.RecordBinders;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -42,24 +45,26 @@ public class UserConfiguration {
     
     private final String JOB_NAME = "userJob";
     private final int CHUNK = 1_000;
+    private final int SQL_RANGE_SIZE = 10_000; // SQL 모드에서 한 번의 UPDATE 문이 처리할 id 범위
     
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
-    private final UserRepository userRepository;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
+    private final LevelRule levelRule; // levelRules JobParameter로 결정되는 등급 기준 (StepScope)
     
     @Bean(JOB_NAME)
     public Job userJob() throws Exception {
         
         return jobBuilderFactory.get(JOB_NAME)
             .incrementer(new RunIdIncrementer())
-            .start(this.saveUseStep())
-            .next(this.userLevelUpStep())
-            .listener(new LevelUpJobExecutionListener(userRepository))
+            .start(this.queryPlanGuardStep(null))
+            .next(this.saveUseStep())
+            .next(this.userLevelUpStep(null))
+            .listener(new LevelUpJobExecutionListener())
             .next(new JobParametersDecide("date")) // JobParameters로 date값에 따라 status가 결정됨
             .on(JobParametersDecide.CONTINUE.getName()) // status값이 CONTINUE인 경우에만 to() 메서드가 작동됨
-            .to(this.orderStatisticsStep(null, null))
+            .to(this.orderStatisticsStep(null, null, null, null))
             .build()
             .build();
     }
@@ -68,18 +73,20 @@ public class UserConfiguration {
     @JobScope
     public Step orderStatisticsStep(
         @Value("#{jobParameters[date]}") String date,
-        @Value("#{jobParameters[path]}") String path
+        @Value("#{jobParameters[path]}") String path,
+        @Value("#{jobParameters[statisticsMode]}") String statisticsMode,
+        @Value("#{jobParameters[outputFormat]}") String outputFormat
     ) throws Exception {
     
         return stepBuilderFactory.get(JOB_NAME + "_orderStatisticsStep")
             .<OrderStatistics, OrderStatistics>chunk(CHUNK)
-            .reader(this.orderStatisticsItemReader(date))
-            .writer(this.orderStatisticsItemWriter(date, path))
+            .reader(this.orderStatisticsItemReader(date, statisticsMode))
+            .writer(this.orderStatisticsItemWriter(date, path, outputFormat))
             .build();
             
     }
     
-    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date, String path) throws Exception {
+    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date, String path, String outputFormat) throws Exception {
     
         YearMonth yearMonth = YearMonth.parse(date);
     
@@ -88,29 +95,52 @@ public class UserConfiguration {
             yearMonth.getMonthValue()
         );
     
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] { "amount", "date" });
+        OutputFormat format = OutputFormat.of(outputFormat);
     
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(","); // csv 파일이기 때문에 콤마(,)를 기준으로 설정
-        lineAggregator.setFieldExtractor(fieldExtractor);
+        if (format != OutputFormat.CSV) {
+            // 대용량 export: direct ByteBuffer에 기록하고 FileChannel로 저장한다. (csv_gzip, ndjson, binary)
+            ChannelItemWriter<OrderStatistics> itemWriter = new ChannelItemWriter<>(RecordBinders.ORDER_STATISTICS, new String[] { "amount", "date" }, format);
+            itemWriter.setName(JOB_NAME + "_orderStatisticsItemWriter");
+            itemWriter.setResource(new FileSystemResource(path + format.fileName(fileName)));
+            itemWriter.setHeader("total_amount,date");
+            itemWriter.afterPropertiesSet();
     
-        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
-            .name(JOB_NAME + "_orderStatisticsItemWriter")
-            .resource(new FileSystemResource(path + fileName))
-            .encoding("UTF-8")
-            .lineAggregator(lineAggregator)
-            .headerCallback(writer -> writer.write("total_amount,date"))
-            .build();
+            return itemWriter;
+        }
+    
+        // amount, date 순서로 StringBuilder에 바로 기록한다. (BeanWrapperFieldExtractor의 reflection 없이, csv 파일이기 때문에 콤마(,)를 기준으로 설정)
+        BinderFlatFileItemWriter<OrderStatistics> itemWriter = new BinderFlatFileItemWriter<>(RecordBinders.ORDER_STATISTICS, ",");
+        itemWriter.setName(JOB_NAME + "_orderStatisticsItemWriter");
+        itemWriter.setResource(new FileSystemResource(path + fileName));
+        itemWriter.setEncoding("UTF-8");
+        itemWriter.setHeaderCallback(writer -> writer.write("total_amount,date"));
         itemWriter.afterPropertiesSet();
     
         return itemWriter;
     }
     
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
+    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date, String statisticsMode) throws Exception {
     
         YearMonth yearMonth = YearMonth.parse(date);
     
+        StatisticsMode mode = StatisticsMode.of(statisticsMode);
+    
+        if (mode == StatisticsMode.ROLLUP) {
+            // orders를 집계하지 않고 daily_order_rollup에서 최대 31행만 읽는다.
+            DailyOrderRollupItemReader itemReader = new DailyOrderRollupItemReader(dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth());
+            itemReader.setName(JOB_NAME + "_dailyOrderRollupItemReader");
+    
+            return itemReader;
+        }
+    
+        if (mode == StatisticsMode.STREAM) {
+            // 한 달의 주문을 cursor로 한 번만 읽으면서 일별로 합산한다. (page마다 GROUP BY를 다시 실행하지 않는다.)
+            OrderStatisticsStreamItemReader itemReader = new OrderStatisticsStreamItemReader(dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth());
+            itemReader.setName(JOB_NAME + "_orderStatisticsStreamItemReader");
+    
+            return itemReader;
+        }
+    
         Map<String, Object> parameters = new HashMap<>();
         parameters.put("startDate", yearMonth.atDay(1));
         parameters.put("endDate", yearMonth.atEndOfMonth());
@@ -123,8 +153,8 @@ public class UserConfiguration {
             .dataSource(dataSource)
             .rowMapper((rs, rowNum) ->
                 OrderStatistics.builder()
-                    .amount(rs.getString(1))
-                    .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
+                    .amount(rs.getLong(1))
+                    .date(rs.getDate(2).toLocalDate())
                     .build()
             )
             .pageSize(CHUNK) // chunk size와 동일하게 설정
@@ -140,53 +170,109 @@ public class UserConfiguration {
         return itemReader;
     }
     
+    @Bean(JOB_NAME + "_queryPlanGuardStep")
+    @JobScope
+    public Step queryPlanGuardStep(@Value("#{jobParameters[queryPlanGuard]}") String queryPlanGuard) {
+
+        return QueryPlanGuardTasklet.step(stepBuilderFactory, JOB_NAME + "_queryPlanGuardStep", dataSource, queryPlanGuard, ReaderQueryChecks.userJob());
+    }
+        
     @Bean(JOB_NAME + "_saveUseStep")
     public Step saveUseStep() {
         
         return stepBuilderFactory.get(JOB_NAME + "_saveUseStep")
-            .tasklet(new SaveUserTasklet(userRepository))
+            .tasklet(new SaveUserTasklet(dataSource))
             .build();
     }
     
     @Bean(JOB_NAME + "_userLevelUpStep")
-    public Step userLevelUpStep() throws Exception {
+    @JobScope
+    public Step userLevelUpStep(@Value("#{jobParameters[levelUpMode]}") String levelUpMode) throws Exception {
+    
+        LevelUpMode mode = LevelUpMode.of(levelUpMode);
+    
+        if (mode == LevelUpMode.SQL) return this.sqlLevelUpStep();
+        if (mode == LevelUpMode.PROJECTION) return this.projectionLevelUpStep(this.candidateItemReader());
+        if (mode == LevelUpMode.INCREMENTAL) return this.incrementalLevelUpStep();
     
         return stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
-            .<User, User>chunk(CHUNK)
+            .<User, LevelUpDecision>chunk(CHUNK)
             .reader(this.itemReader())
             .processor(this.itemProcessor())
             .writer(this.itemWriter())
             .build();
     }
     
-    private ItemWriter<? super User> itemWriter() {
-        
-        return users -> users.forEach(user -> {
-            user.levelUp();
-            userRepository.save(user);
-        });
+    private Step sqlLevelUpStep() {
+    
+        return stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+            .tasklet(new SqlLevelUpTasklet(dataSource, levelRule, SQL_RANGE_SIZE)) // User Entity를 읽지 않고 DB에서 id 범위 단위로 등급을 상향한다.
+            .build();
     }
     
-    private ItemProcessor<? super User,? extends User> itemProcessor() {
+    private Step projectionLevelUpStep(ItemReader<? extends LevelUpCandidate> itemReader) {
     
-        return user -> {
-            // 등급 상향 대상 유저의 경우
-            if (user.availableLevelUp()) return user;
-        
-            return null;
-        };
+        return stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+            .<LevelUpCandidate, LevelUpDecision>chunk(CHUNK)
+            .reader(itemReader)
+            .processor(this.candidateItemProcessor())
+            .writer(new JdbcLevelUpItemWriter(dataSource))
+            .build();
+    }
+    
+    private Step incrementalLevelUpStep() {
+    
+        return stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
+            .<LevelUpCandidate, LevelUpCandidate>chunk(CHUNK)
+            .reader(this.incrementalItemReader())
+            .writer(new IncrementalLevelUpItemWriter(dataSource, levelRule)) // 등급 판단과 level_dirty 해제를 같은 chunk 트랜잭션에서 처리한다.
+            .build();
+    }
+    
+    private ItemProcessor<? super LevelUpCandidate, ? extends LevelUpDecision> candidateItemProcessor() {
+    
+        return candidate -> LevelUpDecision.of(candidate, levelRule); // 등급 상향 대상만 writer로 전달
     }
     
-    private ItemReader<? extends User> itemReader() throws Exception {
+    private ItemReader<? extends LevelUpCandidate> candidateItemReader() throws Exception {
     
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-            .queryString("SELECT u FROM users u")
-            .entityManagerFactory(entityManagerFactory)
-            .pageSize(CHUNK) // pageSize는 보통 chunk size와 동일하게 설정한다.
-            .name(JOB_NAME + "_userItemReader")
+        JdbcCursorItemReader<LevelUpCandidate> itemReader = new JdbcCursorItemReaderBuilder<LevelUpCandidate>()
+            .name(JOB_NAME + "_candidateItemReader")
+            .dataSource(dataSource)
+            .sql("SELECT id, level, total_amount FROM users ORDER BY id") // orders를 집계하지 않고 users.total_amount 컬럼만 읽는다.
+            .rowMapper(LevelUpCandidate.ROW_MAPPER)
+            .fetchSize(CHUNK) // 한 번에 CHUNK 크기만큼 가져온다. (MySQL은 useCursorFetch=true 설정 필요)
             .build();
         itemReader.afterPropertiesSet();
     
         return itemReader;
     }
+    
+    private ItemReader<? extends LevelUpCandidate> incrementalItemReader() {
+    
+        // StepExecutionListener이기도 하기 때문에 beforeStep에서 fullScan JobParameter로 조회 범위를 결정한다.
+        IncrementalLevelUpItemReader itemReader = new IncrementalLevelUpItemReader(dataSource);
+        itemReader.setName(JOB_NAME + "_incrementalItemReader");
+        itemReader.setFetchSize(CHUNK);
+    
+        return itemReader;
+    }
+    
+    private ItemWriter<? super LevelUpDecision> itemWriter() {
+        
+        return new JdbcLevelUpItemWriter(dataSource); // processor가 계산한 결과를 chunk 단위로 하나의 JDBC batch UPDATE로 저장한다.
+    }
+    
+    private ItemProcessor<? super User, ? extends LevelUpDecision> itemProcessor() {
+    
+        return user -> LevelUpDecision.of(user, levelRule); // 등급 상향 대상이 아니면 null을 반환하여 writer로 전달하지 않는다.
+    }
+    
+    private ItemReader<? extends User> itemReader() {
+    
+        UserKeysetItemReader itemReader = new UserKeysetItemReader(entityManagerFactory, CHUNK, null, null); // OFFSET 대신 마지막 id 기준으로 page를 조회한다.
+        itemReader.setName(JOB_NAME + "_userItemReader");
+    
+        return itemReader;
+    }
 }
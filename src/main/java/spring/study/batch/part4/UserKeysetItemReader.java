@@ -0,0 +1,114 @@
+package spring.study.batch.part4;
+
+import org.hibernate.annotations.QueryHints;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * OFFSET 대신 마지막으로 읽은 id 다음부터 조회하는(keyset) 방식으로 users를 읽는다.
+ * WHERE u.id > :lastId 조건으로 PK index를 바로 탐색하기 때문에 몇 번째 page든 조회 비용이 같고,
+ * writer가 중간에 row를 수정해도 page가 밀리지 않는다.
+ * 마지막으로 반환한 id를 ExecutionContext에 저장하여 재시작 시 그 다음 id부터 읽는다.
+ */
+public class UserKeysetItemReader extends AbstractItemCountingItemStreamItemReader<User> {
+
+    private static final String LAST_ID_KEY = "lastId";
+    private static final String QUERY = "SELECT u FROM users u WHERE u.id > :lastId AND u.id <= :maxId ORDER BY u.id";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final int pageSize;
+    private final long startId; // 첫 page는 startId보다 큰 id부터 조회한다.
+    private final long maxId;
+
+    private EntityManager entityManager;
+    private List<User> page = new ArrayList<>();
+    private int index;
+    private boolean lastPage;
+    private long lastId;
+
+    /**
+     * minId, maxId가 null이면 전체 users를 읽는다. (UserLevelUpPartitioner의 id 범위를 그대로 전달할 수 있다.)
+     */
+    public UserKeysetItemReader(EntityManagerFactory entityManagerFactory, int pageSize, Long minId, Long maxId) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.pageSize = pageSize;
+        this.startId = Objects.isNull(minId) ? Long.MIN_VALUE : minId - 1;
+        this.maxId = Objects.isNull(maxId) ? Long.MAX_VALUE : maxId;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+
+        lastId = executionContext.getLong(this.getExecutionContextKey(LAST_ID_KEY), startId); // 재시작인 경우 저장된 id부터 다시 읽는다.
+
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+
+        super.update(executionContext);
+
+        if (this.isSaveState()) executionContext.putLong(this.getExecutionContextKey(LAST_ID_KEY), lastId);
+    }
+
+    @Override
+    protected void jumpToItem(int itemIndex) {
+        // lastId부터 조회하기 때문에 이미 읽은 item을 다시 읽으며 건너뛸 필요가 없다.
+    }
+
+    @Override
+    protected void doOpen() {
+
+        entityManager = entityManagerFactory.createEntityManager();
+        page = new ArrayList<>();
+        index = 0;
+        lastPage = false;
+    }
+
+    @Override
+    protected synchronized User doRead() {
+
+        if (index >= page.size()) {
+
+            if (lastPage) return null;
+
+            this.readPage();
+
+            if (page.isEmpty()) return null;
+        }
+
+        User user = page.get(index++);
+        lastId = user.getId();
+
+        return user;
+    }
+
+    private void readPage() {
+
+        entityManager.clear(); // 이전 page의 Entity를 영속성 컨텍스트에서 제거하여 메모리 사용량을 page 크기로 유지한다.
+
+        page = entityManager.createQuery(QUERY, User.class)
+            .setParameter("lastId", lastId)
+            .setParameter("maxId", maxId)
+            .setMaxResults(pageSize)
+            .setHint(QueryHints.READ_ONLY, true) // 변경 감지를 위한 snapshot을 만들지 않는다.
+            .getResultList();
+        index = 0;
+        lastPage = page.size() < pageSize;
+    }
+
+    @Override
+    protected void doClose() {
+
+        if (Objects.nonNull(entityManager)) entityManager.close();
+
+        page = new ArrayList<>();
+    }
+}
@@ -0,0 +1,30 @@
+package spring.study.batch.part5;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.LocalDate;
+
+/**
+ * 일별 주문 금액 합계/주문 수 (orders를 집계하지 않고 통계를 만들기 위한 집계 테이블)
+ * 주문을 저장하는 writer가 같은 트랜잭션에서 DailyOrderRollupAccumulator로 갱신하고,
+ * 그 외의 경로로 저장된 주문은 dailyOrderRollupJob이 반영한다.
+ */
+@Entity
+@Table(name = "daily_order_rollup")
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyOrderRollup {
+
+    @Id
+    private LocalDate orderDate; // date는 예약어이기 때문에 order_date로 사용한다.
+
+    private long totalAmount;
+
+    private long orderCount;
+}
@@ -0,0 +1,57 @@
+package spring.study.batch.part5;
+
+import org.springframework.batch.support.DatabaseType;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 저장하는 주문의 금액/건수를 일별로 모았다가 daily_order_rollup에 한 번의 JDBC batch로 더한다.
+ * 주문 INSERT와 같은 Connection(트랜잭션)에서 flush 해야 주문과 집계가 함께 commit/rollback 된다.
+ */
+public class DailyOrderRollupAccumulator {
+
+    private static final String H2_UPSERT_SQL = "MERGE INTO daily_order_rollup r"
+        + " USING (VALUES (CAST(? AS DATE), CAST(? AS BIGINT), CAST(? AS BIGINT))) v (order_date, total_amount, order_count)"
+        + " ON (r.order_date = v.order_date)"
+        + " WHEN MATCHED THEN UPDATE SET total_amount = r.total_amount + v.total_amount, order_count = r.order_count + v.order_count"
+        + " WHEN NOT MATCHED THEN INSERT (order_date, total_amount, order_count) VALUES (v.order_date, v.total_amount, v.order_count)";
+
+    private static final String MYSQL_UPSERT_SQL = "INSERT INTO daily_order_rollup (order_date, total_amount, order_count) VALUES (?, ?, ?)"
+        + " ON DUPLICATE KEY UPDATE total_amount = total_amount + VALUES(total_amount), order_count = order_count + VALUES(order_count)";
+
+    private final Map<LocalDate, long[]> days = new TreeMap<>(); // 날짜 순서로 갱신하여 여러 thread가 같은 행을 같은 순서로 잠그게 한다.
+
+    public void add(LocalDate orderDate, long amount) {
+
+        long[] day = days.computeIfAbsent(orderDate, date -> new long[2]);
+        day[0] += amount;
+        day[1]++;
+    }
+
+    public void flush(Connection connection) throws SQLException {
+
+        if (days.isEmpty()) return;
+
+        DatabaseType databaseType = DatabaseType.fromProductName(connection.getMetaData().getDatabaseProductName());
+
+        try (PreparedStatement ps = connection.prepareStatement(databaseType == DatabaseType.MYSQL ? MYSQL_UPSERT_SQL : H2_UPSERT_SQL)) {
+
+            for (Map.Entry<LocalDate, long[]> day : days.entrySet()) {
+                ps.setDate(1, Date.valueOf(day.getKey()));
+                ps.setLong(2, day.getValue()[0]);
+                ps.setLong(3, day.getValue()[1]);
+                ps.addBatch();
+            }
+
+            ps.executeBatch();
+        }
+
+        days.clear();
+    }
+}
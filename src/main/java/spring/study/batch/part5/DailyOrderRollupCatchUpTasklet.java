@@ -0,0 +1,78 @@
+package spring.study.batch.part5;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 저장된 후 아직 반영하지 않은 주문(orders.rollup_dirty = TRUE)의 날짜만 orders에서 다시 집계하여 daily_order_rollup을 덮어쓴다.
+ * 날짜 단위로 다시 계산하기 때문에 writer가 이미 더한 날짜를 다시 처리해도 값이 중복되지 않는다.
+ * fullRebuild=true인 경우 전체를 다시 집계한다.
+ *
+ * rollup_dirty는 주문을 INSERT 하는 구문에서 함께 설정되기 때문에 commit된 주문만 보이고, id 할당 순서(thread 별 id block)와 관계없이 누락되지 않는다.
+ * rollup_dirty를 먼저 해제한 뒤 그 날짜를 다시 집계하기 때문에, 해제 이후에 commit된 주문은 다음 실행에서 다시 집계된다.
+ */
+@Slf4j
+public class DailyOrderRollupCatchUpTasklet implements Tasklet {
+
+    private static final int DAYS_PER_STATEMENT = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean fullRebuild;
+
+    public DailyOrderRollupCatchUpTasklet(DataSource dataSource, boolean fullRebuild) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.fullRebuild = fullRebuild;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+
+        if (fullRebuild) {
+
+            jdbcTemplate.update("UPDATE orders SET rollup_dirty = FALSE WHERE rollup_dirty = TRUE");
+            jdbcTemplate.update("DELETE FROM daily_order_rollup");
+            int days = jdbcTemplate.update("INSERT INTO daily_order_rollup (order_date, total_amount, order_count)"
+                + " SELECT created_date, SUM(amount), COUNT(*) FROM orders GROUP BY created_date");
+
+            contribution.incrementWriteCount(days);
+            log.info("daily_order_rollup 전체 재집계 {}일", days);
+
+            return RepeatStatus.FINISHED;
+        }
+
+        List<LocalDate> dirtyDays = jdbcTemplate.queryForList(
+            "SELECT DISTINCT created_date FROM orders WHERE rollup_dirty = TRUE", LocalDate.class
+        );
+
+        for (int from = 0; from < dirtyDays.size(); from += DAYS_PER_STATEMENT) {
+            this.rebuild(dirtyDays.subList(from, Math.min(from + DAYS_PER_STATEMENT, dirtyDays.size())));
+        }
+
+        contribution.incrementWriteCount(dirtyDays.size());
+        log.info("daily_order_rollup {}일 재집계", dirtyDays.size());
+
+        return RepeatStatus.FINISHED;
+    }
+
+    private void rebuild(List<LocalDate> days) {
+
+        String placeholders = String.join(", ", Collections.nCopies(days.size(), "?"));
+        Object[] parameters = days.stream().map(Date::valueOf).toArray();
+
+        jdbcTemplate.update("UPDATE orders SET rollup_dirty = FALSE WHERE rollup_dirty = TRUE AND created_date IN (" + placeholders + ")", parameters);
+        jdbcTemplate.update("DELETE FROM daily_order_rollup WHERE order_date IN (" + placeholders + ")", parameters);
+        jdbcTemplate.update("INSERT INTO daily_order_rollup (order_date, total_amount, order_count)"
+            + " SELECT created_date, SUM(amount), COUNT(*) FROM orders WHERE created_date IN (" + placeholders + ")"
+            + " GROUP BY created_date", parameters);
+    }
+}
@@ -0,0 +1,48 @@
+package spring.study.batch.part5;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+
+/**
+ * 저장된 후 아직 반영하지 않은 주문(rollup_dirty)의 날짜를 daily_order_rollup에 반영하는 Job (fullRebuild=true이면 전체 재집계)
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class DailyOrderRollupConfiguration {
+
+    private final String JOB_NAME = "dailyOrderRollupJob";
+
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final DataSource dataSource;
+
+    @Bean(JOB_NAME)
+    public Job dailyOrderRollupJob() {
+
+        return jobBuilderFactory.get(JOB_NAME)
+            .incrementer(new RunIdIncrementer())
+            .start(this.catchUpStep(null))
+            .build();
+    }
+
+    @Bean(JOB_NAME + "_catchUpStep")
+    @JobScope
+    public Step catchUpStep(@Value("#{jobParameters[fullRebuild]}") String fullRebuild) {
+
+        return stepBuilderFactory.get(JOB_NAME + "_catchUpStep")
+            .tasklet(new DailyOrderRollupCatchUpTasklet(dataSource, Boolean.parseBoolean(fullRebuild)))
+            .build();
+    }
+}
@@ -0,0 +1,31 @@
+package spring.study.batch.part5;
+
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+
+/**
+ * orders 대신 daily_order_rollup에서 기간의 일별 통계를 읽는다. (한 달이면 최대 31행)
+ */
+public class DailyOrderRollupItemReader extends JdbcCursorItemReader<OrderStatistics> {
+
+    private static final String SQL = "SELECT total_amount, order_date FROM daily_order_rollup"
+        + " WHERE order_date >= ? AND order_date <= ? ORDER BY order_date";
+
+    public DailyOrderRollupItemReader(DataSource dataSource, LocalDate startDate, LocalDate endDate) {
+        this.setDataSource(dataSource);
+        this.setSql(SQL);
+        this.setPreparedStatementSetter(ps -> {
+            ps.setDate(1, Date.valueOf(startDate));
+            ps.setDate(2, Date.valueOf(endDate));
+        });
+        this.setRowMapper((rs, rowNum) ->
+            OrderStatistics.builder()
+                .amount(rs.getLong(1))
+                .date(rs.getDate(2).toLocalDate())
+                .build()
+        );
+    }
+}
@@ -0,0 +1,74 @@
+package spring.study.batch.part5;
+
+import io.micrometer.core.instrument.util.StringUtils;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * startDate ~ endDate 기간을 하루 또는 일주일 단위로 나누어 partition을 만든다.
+ * partition 수는 gridSize가 아니라 기간과 단위로 결정되며(1년을 week로 나누면 53개), TaskExecutor의 thread 수만큼 동시에 처리된다.
+ *
+ * partition 번호는 날짜 순서이기 때문에 partFile 이름(part-00000.csv ...)을 정렬하면 결과를 날짜 순서로 합칠 수 있다.
+ */
+public class DateRangePartitioner implements Partitioner {
+
+    public enum Unit {
+        DAY(1),
+        WEEK(7);
+
+        private final int days;
+
+        Unit(int days) {
+            this.days = days;
+        }
+
+        public static Unit of(String value) {
+
+            if (StringUtils.isEmpty(value)) return WEEK;
+
+            return Unit.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+    private final Unit unit;
+    private final String partDirectory;
+
+    public DateRangePartitioner(LocalDate startDate, LocalDate endDate, Unit unit, String partDirectory) {
+
+        if (endDate.isBefore(startDate)) throw new IllegalArgumentException("endDate는 startDate 이후여야 합니다: " + startDate + " ~ " + endDate);
+
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.unit = unit;
+        this.partDirectory = partDirectory;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+
+        Map<String, ExecutionContext> result = new HashMap<>();
+
+        int number = 0;
+
+        for (LocalDate start = startDate; !start.isAfter(endDate); start = start.plusDays(unit.days)) {
+
+            LocalDate end = start.plusDays(unit.days - 1);
+
+            ExecutionContext value = new ExecutionContext();
+            value.putString("startDate", start.toString());
+            value.putString("endDate", (end.isAfter(endDate) ? endDate : end).toString());
+            value.putString("partFile", partDirectory + String.format("part-%05d.csv", number));
+
+            result.put(String.format("partition%05d", number), value);
+            number++;
+        }
+
+        return result;
+    }
+}
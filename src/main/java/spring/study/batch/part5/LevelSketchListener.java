@@ -0,0 +1,81 @@
+package spring.study.batch.part5;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * partition이 끝나면 reader가 만든 회원 등급별 QuantileSketch를 part 파일 옆(.levels)에 저장한다.
+ * 완료된 partition의 결과가 파일로 남기 때문에 재시작해도 merge 단계에서 모든 partition의 분포를 합칠 수 있다.
+ */
+public class LevelSketchListener implements StepExecutionListener {
+
+    public static final String SUFFIX = ".levels";
+
+    private final OrderStatisticsStreamItemReader itemReader;
+    private final Path file;
+
+    public LevelSketchListener(OrderStatisticsStreamItemReader itemReader, Path file) {
+        this.itemReader = itemReader;
+        this.file = file;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+
+        if (!ExitStatus.COMPLETED.equals(stepExecution.getExitStatus())) return null;
+
+        try {
+            write(file, itemReader.getLevelSketches());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return null;
+    }
+
+    public static void write(Path file, Map<String, QuantileSketch> sketches) throws IOException {
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+
+            out.writeInt(sketches.size());
+
+            for (Map.Entry<String, QuantileSketch> entry : sketches.entrySet()) {
+                out.writeUTF(entry.getKey());
+                entry.getValue().writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * file의 등급별 분포를 sketches에 합친다.
+     */
+    public static void mergeInto(Path file, Map<String, QuantileSketch> sketches) throws IOException {
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+
+            int size = in.readInt();
+
+            for (int i = 0; i < size; i++) {
+                String level = in.readUTF();
+                sketches.computeIfAbsent(level, key -> new QuantileSketch()).merge(QuantileSketch.readFrom(in));
+            }
+        }
+    }
+}
@@ -13,6 +13,30 @@ import java.time.LocalDate;
 @AllArgsConstructor
 public class OrderStatistics {
     
-    private String amount;
+    private long amount;
     private LocalDate date;
+    
+    // OrderStatisticsStreamItemReader(분포 수집)에서만 채워진다.
+    private long count;
+    private long minAmount;
+    private long maxAmount;
+    private double meanAmount;
+    private long p50;
+    private long p95;
+    private long p99;
+    
+    public static OrderStatistics of(LocalDate date, QuantileSketch sketch) {
+    
+        return OrderStatistics.builder()
+            .amount(sketch.getSum())
+            .date(date)
+            .count(sketch.getCount())
+            .minAmount(sketch.getMin())
+            .maxAmount(sketch.getMax())
+            .meanAmount(sketch.getMean())
+            .p50(sketch.quantile(0.50))
+            .p95(sketch.quantile(0.95))
+            .p99(sketch.quantile(0.99))
+            .build();
+    }
 }
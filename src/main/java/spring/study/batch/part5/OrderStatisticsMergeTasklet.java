@@ -0,0 +1,132 @@
+package spring.study.batch.part5;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * partition 별로 저장된 part 파일을 이름(= 날짜) 순서로 이어 붙여 하나의 CSV 파일을 만든다.
+ * 각 part 파일은 header 없이 저장되어 있기 때문에 header를 한 번만 쓰고 FileChannel.transferTo()로 내용을 그대로 복사한다.
+ * 임시 파일에 합친 후 이동하기 때문에 중간에 실패해도 이전 결과 파일이 깨지지 않고, 성공하면 part 파일을 삭제한다.
+ *
+ * levelOutput이 설정되어 있으면 partition 별 회원 등급 분포(.levels, LevelSketchListener)를 QuantileSketch.merge()로 합쳐서 등급별 통계 파일도 만든다.
+ */
+@Slf4j
+public class OrderStatisticsMergeTasklet implements Tasklet {
+
+    private final Path partDirectory;
+    private final Path output;
+    private final String header;
+
+    private Path levelOutput;
+
+    public OrderStatisticsMergeTasklet(Path partDirectory, Path output, String header) {
+        this.partDirectory = partDirectory;
+        this.output = output;
+        this.header = header;
+    }
+
+    public void setLevelOutput(Path levelOutput) {
+        this.levelOutput = levelOutput;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+
+        List<Path> parts = this.findParts(".csv");
+        List<Path> levelParts = this.findParts(LevelSketchListener.SUFFIX);
+        Path temp = output.resolveSibling(output.getFileName() + ".tmp");
+
+        Files.createDirectories(output.toAbsolutePath().getParent());
+
+        try (FileChannel target = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            target.write(ByteBuffer.wrap((header + "\n").getBytes(StandardCharsets.UTF_8)));
+
+            for (Path part : parts) {
+                try (FileChannel source = FileChannel.open(part, StandardOpenOption.READ)) {
+
+                    long position = 0;
+                    long size = source.size();
+
+                    while (position < size) {
+                        position += source.transferTo(position, size - position, target);
+                    }
+                }
+            }
+        }
+
+        Files.move(temp, output, StandardCopyOption.REPLACE_EXISTING);
+
+        if (Objects.nonNull(levelOutput)) this.writeLevels(levelParts);
+
+        for (Path part : parts) {
+            Files.delete(part);
+        }
+        for (Path part : levelParts) {
+            Files.delete(part);
+        }
+        Files.deleteIfExists(partDirectory);
+
+        contribution.incrementWriteCount(parts.size());
+        log.info("part 파일 {}개를 {}로 합침", parts.size(), output);
+
+        return RepeatStatus.FINISHED;
+    }
+
+    private void writeLevels(List<Path> levelParts) throws IOException {
+
+        Map<String, QuantileSketch> sketches = new TreeMap<>();
+
+        for (Path part : levelParts) {
+            LevelSketchListener.mergeInto(part, sketches);
+        }
+
+        StringBuilder lines = new StringBuilder("level,count,total_amount,min_amount,max_amount,mean_amount,p50,p95,p99\n");
+
+        sketches.forEach((level, sketch) -> lines.append(level)
+            .append(',').append(sketch.getCount())
+            .append(',').append(sketch.getSum())
+            .append(',').append(sketch.getMin())
+            .append(',').append(sketch.getMax())
+            .append(',').append(String.format(Locale.ROOT, "%.2f", sketch.getMean()))
+            .append(',').append(sketch.quantile(0.50))
+            .append(',').append(sketch.quantile(0.95))
+            .append(',').append(sketch.quantile(0.99))
+            .append('\n'));
+
+        Files.write(levelOutput, lines.toString().getBytes(StandardCharsets.UTF_8));
+
+        log.info("partition {}개의 등급별 분포를 {}로 합침", levelParts.size(), levelOutput);
+    }
+
+    private List<Path> findParts(String suffix) throws IOException {
+
+        if (!Files.isDirectory(partDirectory)) return List.of(); // 주문이 있는 날짜가 없는 경우
+
+        try (Stream<Path> files = Files.list(partDirectory)) {
+            return files
+                .filter(file -> file.getFileName().toString().startsWith("part-") && file.getFileName().toString().endsWith(suffix))
+                .sorted() // part-00000.csv, part-00001.csv ... (partition 번호 = 날짜 순서)
+                .collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package spring.study.batch.part5;
+
+import io.micrometer.core.instrument.util.StringUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.task.TaskExecutor;
+import spring.study.batch.part6.BinderFlatFileItemWriter;
+import spring.study.batch.part6.QueryPlanGuardTasklet;
+import spring.study.batch.part6.ReaderQueryChecks;
+import spring.study.batch.part6.RecordBinders;
+
+import javax.sql.DataSource;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+
+/**
+ * startDate ~ endDate 기간(연도를 넘어도 된다.)의 일별 주문 금액을 하나의 CSV 파일로 저장하는 Job
+ * 기간을 하루/일주일(partitionUnit, 기본값 week) 단위 partition으로 나누어 TaskExecutor에서 병렬로 집계하고,
+ * partition 별 part 파일을 날짜 순서로 합친다. (1년을 월 단위로 반복 실행하지 않고 core 수만큼 동시에 처리한다.)
+ * 같은 scan에서 일별 건수/최소/최대/평균/p50/p95/p99와 회원 등급별 주문 금액 분포도 함께 집계한다. (QuantileSketch)
+ *
+ * - path: 결과 파일을 저장할 디렉토리 (기본값 output/)
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class OrderStatisticsRangeConfiguration {
+
+    private final String JOB_NAME = "orderStatisticsRangeJob";
+    private final int CHUNK = 1_000;
+    private final String HEADER = "total_amount,date,count,min_amount,max_amount,mean_amount,p50,p95,p99";
+
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final DataSource dataSource;
+    private final TaskExecutor taskExecutor;
+
+    @Bean(JOB_NAME)
+    public Job orderStatisticsRangeJob() throws Exception {
+
+        return jobBuilderFactory.get(JOB_NAME)
+            .incrementer(new RunIdIncrementer())
+            .start(this.queryPlanGuardStep(null))
+            .next(this.statisticsManagerStep())
+            .next(this.mergeStep(null, null, null, null))
+            .build();
+    }
+
+    @Bean(JOB_NAME + "_queryPlanGuardStep")
+    @JobScope
+    public Step queryPlanGuardStep(@Value("#{jobParameters[queryPlanGuard]}") String queryPlanGuard) {
+
+        return QueryPlanGuardTasklet.step(stepBuilderFactory, JOB_NAME + "_queryPlanGuardStep", dataSource, queryPlanGuard, ReaderQueryChecks.orderStatistics());
+    }
+
+    @Bean(JOB_NAME + "_statisticsStep.manager")
+    public Step statisticsManagerStep() throws Exception {
+
+        return stepBuilderFactory.get(JOB_NAME + "_statisticsStep.manager")
+            .partitioner(JOB_NAME + "_statisticsStep", this.dateRangePartitioner(null, null, null, null, null))
+            .step(this.statisticsStep())
+            .partitionHandler(this.statisticsPartitionHandler())
+            .build();
+    }
+
+    @Bean(JOB_NAME + "_dateRangePartitioner")
+    @StepScope
+    public Partitioner dateRangePartitioner(
+        @Value("#{jobParameters[startDate]}") String startDate,
+        @Value("#{jobParameters[endDate]}") String endDate,
+        @Value("#{jobParameters[partitionUnit]}") String partitionUnit,
+        @Value("#{jobParameters[path]}") String path,
+        @Value("#{stepExecution.jobExecution.jobInstance.id}") Long jobInstanceId
+    ) {
+
+        return new DateRangePartitioner(
+            LocalDate.parse(startDate),
+            LocalDate.parse(endDate),
+            DateRangePartitioner.Unit.of(partitionUnit),
+            this.partDirectoryOf(startDate, endDate, path, jobInstanceId)
+        );
+    }
+
+    @Bean(JOB_NAME + "_statisticsPartitionHandler")
+    public PartitionHandler statisticsPartitionHandler() {
+
+        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
+        handler.setStep(this.statisticsStep());
+        handler.setTaskExecutor(taskExecutor);
+
+        return handler;
+    }
+
+    @Bean(JOB_NAME + "_statisticsStep")
+    public Step statisticsStep() {
+
+        return stepBuilderFactory.get(JOB_NAME + "_statisticsStep")
+            .<OrderStatistics, OrderStatistics>chunk(CHUNK)
+            .reader(this.statisticsItemReader(null, null))
+            .writer(this.partItemWriter(null))
+            .listener(this.levelSketchListener(null))
+            .build();
+    }
+
+    @Bean(JOB_NAME + "_statisticsItemReader")
+    @StepScope // partition 별 ExecutionContext의 startDate, endDate를 사용하기 위해 StepScope로 설정
+    public OrderStatisticsStreamItemReader statisticsItemReader(
+        @Value("#{stepExecutionContext[startDate]}") String startDate,
+        @Value("#{stepExecutionContext[endDate]}") String endDate
+    ) {
+
+        // partition의 기간(하루 ~ 일주일)만 cursor로 한 번 읽으면서 일별로 합산한다.
+        OrderStatisticsStreamItemReader itemReader = new OrderStatisticsStreamItemReader(dataSource, LocalDate.parse(startDate), LocalDate.parse(endDate));
+        itemReader.setName(JOB_NAME + "_statisticsItemReader");
+        itemReader.setCollectDistribution(true);
+
+        return itemReader;
+    }
+
+    @Bean(JOB_NAME + "_levelSketchListener")
+    @StepScope // 같은 partition의 statisticsItemReader가 만든 등급별 분포를 part 파일 옆에 저장한다.
+    public LevelSketchListener levelSketchListener(@Value("#{stepExecutionContext[partFile]}") String partFile) {
+
+        return new LevelSketchListener(this.statisticsItemReader(null, null), Paths.get(partFile + LevelSketchListener.SUFFIX));
+    }
+
+    @Bean(JOB_NAME + "_partItemWriter")
+    @StepScope
+    public BinderFlatFileItemWriter<OrderStatistics> partItemWriter(@Value("#{stepExecutionContext[partFile]}") String partFile) {
+
+        BinderFlatFileItemWriter<OrderStatistics> itemWriter = new BinderFlatFileItemWriter<>(RecordBinders.ORDER_DISTRIBUTION, ",");
+        itemWriter.setName(JOB_NAME + "_partItemWriter");
+        itemWriter.setResource(new FileSystemResource(partFile));
+        itemWriter.setEncoding("UTF-8");
+        itemWriter.setShouldDeleteIfEmpty(true); // 주문이 없는 기간은 part 파일을 남기지 않는다. (header는 merge 단계에서 한 번만 쓴다.)
+
+        return itemWriter;
+    }
+
+    @Bean(JOB_NAME + "_mergeStep")
+    @JobScope
+    public Step mergeStep(
+        @Value("#{jobParameters[startDate]}") String startDate,
+        @Value("#{jobParameters[endDate]}") String endDate,
+        @Value("#{jobParameters[path]}") String path,
+        @Value("#{jobExecution.jobInstance.id}") Long jobInstanceId
+    ) {
+
+        String fileName = String.format("%s_%s_일별_주문_금액.csv", startDate, endDate);
+
+        OrderStatisticsMergeTasklet tasklet = new OrderStatisticsMergeTasklet(
+            Paths.get(this.partDirectoryOf(startDate, endDate, path, jobInstanceId)),
+            Paths.get(this.directoryOf(path), fileName),
+            HEADER
+        );
+        tasklet.setLevelOutput(Paths.get(this.directoryOf(path), String.format("%s_%s_등급별_주문_금액.csv", startDate, endDate)));
+
+        return stepBuilderFactory.get(JOB_NAME + "_mergeStep")
+            .tasklet(tasklet)
+            .build();
+    }
+
+    private String partDirectoryOf(String startDate, String endDate, String path, Long jobInstanceId) {
+
+        // 재시작(같은 JobInstance) 시 완료된 partition의 part 파일을 그대로 사용하고,
+        // 실패한 이전 JobInstance가 남긴 part 파일(다른 partitionUnit이면 번호가 다르다.)은 합치지 않는다.
+        return this.directoryOf(path) + String.format(".parts_%s_%s_%d/", startDate, endDate, jobInstanceId);
+    }
+
+    private String directoryOf(String path) {
+
+        if (StringUtils.isEmpty(path)) return "output/";
+
+        return path.endsWith("/") ? path : path + "/";
+    }
+}
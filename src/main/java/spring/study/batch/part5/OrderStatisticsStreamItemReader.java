@@ -0,0 +1,123 @@
+package spring.study.batch.part5;
+
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * 기간(startDate ~ endDate)의 주문을 forward-only cursor로 한 번만 읽으면서 일별 합계를 long 배열에 누적하고, 주문이 있는 날짜의 통계를 날짜 순서로 반환한다.
+ * page마다 GROUP BY를 다시 실행하는 JdbcPagingItemReader와 달리 기간이 길어도 집계는 한 번만 실행된다.
+ * (재시작 시에는 다시 집계한 후 이미 읽은 건수만큼 건너뛴다.)
+ *
+ * setCollectDistribution(true)이면 같은 scan에서 일별/회원 등급별 QuantileSketch를 함께 만들어 건수, 최소/최대, 평균, p50/p95/p99를 채운다.
+ * (회원 등급을 알기 위해 users를 join 한다.)
+ */
+public class OrderStatisticsStreamItemReader extends AbstractItemCountingItemStreamItemReader<OrderStatistics> {
+
+    private static final int FETCH_SIZE = 10_000; // MySQL은 useCursorFetch=true 설정 필요 (application-mysql.yml 참고)
+    private static final String SQL = "SELECT created_date, amount FROM orders WHERE created_date >= ? AND created_date <= ?";
+    private static final String DISTRIBUTION_SQL = "SELECT o.created_date, o.amount, u.level FROM orders o LEFT JOIN users u ON u.id = o.user_id"
+        + " WHERE o.created_date >= ? AND o.created_date <= ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+
+    private boolean collectDistribution;
+
+    private long[] amounts; // startDate로부터 지난 일수 → 주문 금액 합계
+    private int[] counts; // startDate로부터 지난 일수 → 주문 수
+    private QuantileSketch[] sketches; // startDate로부터 지난 일수 → 주문 금액 분포 (collectDistribution)
+    private Map<String, QuantileSketch> levelSketches; // 회원 등급 → 주문 금액 분포 (collectDistribution)
+    private int day;
+
+    public OrderStatisticsStreamItemReader(DataSource dataSource, LocalDate startDate, LocalDate endDate) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.setName(OrderStatisticsStreamItemReader.class.getSimpleName());
+    }
+
+    public void setCollectDistribution(boolean collectDistribution) {
+        this.collectDistribution = collectDistribution;
+    }
+
+    /**
+     * open() 이후 기간 전체의 회원 등급별 주문 금액 분포 (partition 별 결과는 QuantileSketch.merge()로 합친다.)
+     */
+    public Map<String, QuantileSketch> getLevelSketches() {
+
+        return Objects.isNull(levelSketches) ? Collections.emptyMap() : Collections.unmodifiableMap(levelSketches);
+    }
+
+    @Override
+    protected void doOpen() {
+
+        int days = (int) ChronoUnit.DAYS.between(startDate, endDate) + 1;
+        long startEpochDay = startDate.toEpochDay();
+
+        amounts = new long[days];
+        counts = new int[days];
+        day = 0;
+
+        if (collectDistribution) {
+            sketches = new QuantileSketch[days];
+            levelSketches = new TreeMap<>();
+        }
+
+        jdbcTemplate.query(collectDistribution ? DISTRIBUTION_SQL : SQL, ps -> {
+            ps.setDate(1, Date.valueOf(startDate));
+            ps.setDate(2, Date.valueOf(endDate));
+        }, rs -> {
+            int index = (int) (rs.getDate(1).toLocalDate().toEpochDay() - startEpochDay);
+            long amount = rs.getLong(2);
+
+            amounts[index] += amount;
+            counts[index]++;
+
+            if (!collectDistribution) return;
+
+            if (Objects.isNull(sketches[index])) sketches[index] = new QuantileSketch();
+            sketches[index].add(amount);
+
+            String level = rs.getString(3);
+            if (Objects.nonNull(level)) levelSketches.computeIfAbsent(level, key -> new QuantileSketch()).add(amount);
+        });
+    }
+
+    @Override
+    protected OrderStatistics doRead() {
+
+        while (day < counts.length && counts[day] == 0) day++; // 주문이 없는 날짜는 GROUP BY와 같이 결과에서 제외한다.
+
+        if (day >= counts.length) return null;
+
+        OrderStatistics statistics = collectDistribution
+            ? OrderStatistics.of(startDate.plusDays(day), sketches[day])
+            : OrderStatistics.builder()
+                .amount(amounts[day])
+                .date(startDate.plusDays(day))
+                .count(counts[day])
+                .build();
+        day++;
+
+        return statistics;
+    }
+
+    @Override
+    protected void doClose() {
+
+        amounts = null;
+        counts = null;
+        sketches = null;
+    }
+}
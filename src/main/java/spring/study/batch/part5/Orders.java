@@ -4,21 +4,31 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.GenericGenerator;
+import spring.study.batch.part6.PooledIdGenerator;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
-import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import java.time.LocalDate;
 
 @Entity
+@Table(indexes = { // 일별 통계(created_date 기간)와 회원 별 합계(user_id) 조회가 full scan이 되지 않도록 한다. (QueryPlanGuardTasklet으로 확인)
+    @Index(name = "idx_orders_created_date", columnList = "created_date"),
+    @Index(name = "idx_orders_user_id", columnList = "user_id"),
+    @Index(name = "idx_orders_rollup_dirty", columnList = "rollup_dirty") // dailyOrderRollupJob이 다시 집계할 날짜만 조회한다.
+})
 @Getter
 @NoArgsConstructor
 @AllArgsConstructor
 public class Orders {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(generator = "pooled") // IDENTITY는 INSERT batch가 되지 않기 때문에 id를 미리 할당받는다.
+    @GenericGenerator(name = "pooled", strategy = PooledIdGenerator.STRATEGY)
     private long id;
     
     private String itemName;
@@ -27,6 +37,11 @@ public class Orders {
     
     private LocalDate createdDate;
     
+    @Column(name = "user_id", insertable = false, updatable = false) // User.orders의 @JoinColumn이 관리하는 컬럼 (index 선언을 위해 읽기 전용으로 매핑)
+    private Long userId;
+    
+    private boolean rollupDirty = true; // 저장된 후 아직 dailyOrderRollupJob이 날짜를 다시 집계하지 않은 주문
+    
     @Builder
     public Orders(String itemName, int amount, LocalDate createdDate) {
         this.itemName = itemName;
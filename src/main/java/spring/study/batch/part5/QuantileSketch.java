@@ -0,0 +1,159 @@
+package spring.study.batch.part5;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * 주문 금액의 분포를 고정된 크기의 로그 bucket histogram으로 요약한다. (DDSketch 방식)
+ * bucket i는 (γ^(i-1), γ^i] 범위의 값 개수이며, γ = (1 + α) / (1 - α)이기 때문에 분위수(p50, p95, p99)의 상대 오차가 α(1%) 이내이다.
+ *
+ * - 메모리: orders.amount(int) 범위 전체가 약 1,100개의 bucket으로 고정된다. (값이 들어오기 전에는 배열을 만들지 않는다.)
+ * - merge(): bucket 별 개수를 더하기만 하면 되기 때문에 partition/thread 별로 만든 sketch를 순서와 관계없이 합칠 수 있다.
+ */
+public class QuantileSketch {
+
+    public static final double RELATIVE_ACCURACY = 0.01;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final int BUCKETS = bucketOf(Integer.MAX_VALUE) + 1; // 더 큰 값은 마지막 bucket에 포함된다.
+
+    private long[] buckets;
+    private long zeroCount; // 0 이하의 값
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public void add(long value) {
+
+        if (value <= 0) {
+            zeroCount++;
+        } else {
+            if (Objects.isNull(buckets)) buckets = new long[BUCKETS];
+            buckets[Math.min(bucketOf(value), BUCKETS - 1)]++;
+        }
+
+        count++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(QuantileSketch other) {
+
+        if (other.count == 0) return;
+
+        if (Objects.nonNull(other.buckets)) {
+
+            if (Objects.isNull(buckets)) buckets = new long[BUCKETS];
+
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] += other.buckets[i];
+            }
+        }
+
+        zeroCount += other.zeroCount;
+        count += other.count;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * q(0 ~ 1) 분위수의 근삿값 (값이 없으면 0)
+     */
+    public long quantile(double q) {
+
+        if (count == 0) return 0;
+
+        long rank = (long) Math.floor(q * (count - 1)); // 0부터 시작하는 순위
+        long seen = zeroCount;
+
+        if (rank < seen) return Math.max(min, Math.min(0, max));
+
+        for (int i = 0; i < BUCKETS; i++) {
+
+            seen += buckets[i];
+
+            if (rank < seen) return Math.max(min, Math.min(max, Math.round(2 * Math.pow(GAMMA, i) / (GAMMA + 1))));
+        }
+
+        return max;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return count == 0 ? 0 : max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * 값이 있는 bucket만 (index, 개수)로 기록한다.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+
+        out.writeLong(count);
+        out.writeLong(sum);
+        out.writeLong(min);
+        out.writeLong(max);
+        out.writeLong(zeroCount);
+
+        int used = 0;
+
+        if (Objects.nonNull(buckets)) {
+            for (long bucket : buckets) {
+                if (bucket > 0) used++;
+            }
+        }
+
+        out.writeInt(used);
+
+        for (int i = 0; used > 0 && i < BUCKETS; i++) {
+            if (buckets[i] == 0) continue;
+            out.writeShort(i);
+            out.writeLong(buckets[i]);
+        }
+    }
+
+    public static QuantileSketch readFrom(DataInput in) throws IOException {
+
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.count = in.readLong();
+        sketch.sum = in.readLong();
+        sketch.min = in.readLong();
+        sketch.max = in.readLong();
+        sketch.zeroCount = in.readLong();
+
+        int used = in.readInt();
+
+        if (used > 0) sketch.buckets = new long[BUCKETS];
+
+        for (int i = 0; i < used; i++) {
+            sketch.buckets[in.readShort()] = in.readLong();
+        }
+
+        return sketch;
+    }
+
+    private static int bucketOf(long value) {
+
+        return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+    }
+}
@@ -0,0 +1,16 @@
+package spring.study.batch.part5;
+
+import io.micrometer.core.instrument.util.StringUtils;
+
+public enum StatisticsMode {
+    PAGING, // GROUP BY 결과를 JdbcPagingItemReader로 page 단위로 읽는 기본 방식
+    STREAM, // 기간의 주문을 cursor로 한 번만 읽으면서 일별 배열에 합산하는 방식
+    ROLLUP; // orders 대신 daily_order_rollup 집계 테이블을 읽는 방식 (dailyOrderRollupJob으로 최신 상태를 유지)
+
+    public static StatisticsMode of(String value) {
+
+        if (StringUtils.isEmpty(value)) return PAGING; // JobParameters에 statisticsMode가 없으면 기존 방식으로 동작
+
+        return StatisticsMode.valueOf(value.trim().toUpperCase());
+    }
+}
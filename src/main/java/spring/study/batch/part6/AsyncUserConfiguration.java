@@ -14,31 +14,29 @@ import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
 import org.springframework.batch.item.database.Order;
 import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.task.TaskExecutor;
+import spring.study.batch.part4.JdbcLevelUpItemWriter;
+import spring.study.batch.part4.LevelRule;
+import spring.study.batch.part4.LevelUpDecision;
 import spring.study.batch.part4.LevelUpJobExecutionListener;
 import spring.study.batch.part4.SaveUserTasklet;
 import spring.study.batch.part4.User;
-import spring.study.batch.part4.UserRepository;
+import spring.study.batch.part4.UserKeysetItemReader;
+import spring.study.batch.part5.DailyOrderRollupItemReader;
 import spring.study.batch.part5.JobParametersDecide;
 import spring.study.batch.part5.OrderStatistics;
+import spring.study.batch.part5.OrderStatisticsStreamItemReader;
+import spring.study.batch.part5.StatisticsMode;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.Future;
@@ -53,9 +51,9 @@ public class AsyncUserConfiguration {
     
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
-    private final UserRepository userRepository;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
+    private final LevelRule levelRule; // levelRules JobParameter로 결정되는 등급 기준 (StepScope)
     private final TaskExecutor taskExecutor;
     
     @Bean(JOB_NAME)
@@ -63,29 +61,34 @@ public class AsyncUserConfiguration {
         
         return jobBuilderFactory.get(JOB_NAME)
             .incrementer(new RunIdIncrementer())
-            .start(this.saveUseStep())
+            .start(this.queryPlanGuardStep(null))
+            .next(this.saveUseStep())
             .next(this.userLevelUpStep())
-            .listener(new LevelUpJobExecutionListener(userRepository))
+            .listener(new LevelUpJobExecutionListener())
             .next(new JobParametersDecide("date")) // JobParameters로 date값에 따라 status가 결정됨
             .on(JobParametersDecide.CONTINUE.getName()) // status값이 CONTINUE인 경우에만 to() 메서드가 작동됨
-            .to(this.orderStatisticsStep(null))
+            .to(this.orderStatisticsStep(null, null, null))
             .build()
             .build();
     }
     
     @Bean(JOB_NAME + "_orderStatisticsStep")
     @JobScope
-    public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date) throws Exception {
+    public Step orderStatisticsStep(
+        @Value("#{jobParameters[date]}") String date,
+        @Value("#{jobParameters[statisticsMode]}") String statisticsMode,
+        @Value("#{jobParameters[outputFormat]}") String outputFormat
+    ) throws Exception {
     
         return stepBuilderFactory.get(JOB_NAME + "_orderStatisticsStep")
             .<OrderStatistics, OrderStatistics>chunk(CHUNK)
-            .reader(this.orderStatisticsItemReader(date))
-            .writer(this.orderStatisticsItemWriter(date))
+            .reader(this.orderStatisticsItemReader(date, statisticsMode))
+            .writer(this.orderStatisticsItemWriter(date, outputFormat))
             .build();
             
     }
     
-    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date) throws Exception {
+    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date, String outputFormat) throws Exception {
     
         YearMonth yearMonth = YearMonth.parse(date);
     
@@ -94,29 +97,52 @@ public class AsyncUserConfiguration {
             yearMonth.getMonthValue()
         );
     
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] { "amount", "date" });
-    
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(","); // csv 파일이기 때문에 콤마(,)를 기준으로 설정
-        lineAggregator.setFieldExtractor(fieldExtractor);
-    
-        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
-            .name(JOB_NAME + "_orderStatisticsItemWriter")
-            .resource(new FileSystemResource("output/" + fileName))
-            .encoding("UTF-8")
-            .lineAggregator(lineAggregator)
-            .headerCallback(writer -> writer.write("total_amount,date"))
-            .build();
+        OutputFormat format = OutputFormat.of(outputFormat);
+    
+        if (format != OutputFormat.CSV) {
+            // 대용량 export: direct ByteBuffer에 기록하고 FileChannel로 저장한다. (csv_gzip, ndjson, binary)
+            ChannelItemWriter<OrderStatistics> itemWriter = new ChannelItemWriter<>(RecordBinders.ORDER_STATISTICS, new String[] { "amount", "date" }, format);
+            itemWriter.setName(JOB_NAME + "_orderStatisticsItemWriter");
+            itemWriter.setResource(new FileSystemResource("output/" + format.fileName(fileName)));
+            itemWriter.setHeader("total_amount,date");
+            itemWriter.afterPropertiesSet();
+    
+            return itemWriter;
+        }
+    
+        // amount, date 순서로 StringBuilder에 바로 기록한다. (BeanWrapperFieldExtractor의 reflection 없이, csv 파일이기 때문에 콤마(,)를 기준으로 설정)
+        BinderFlatFileItemWriter<OrderStatistics> itemWriter = new BinderFlatFileItemWriter<>(RecordBinders.ORDER_STATISTICS, ",");
+        itemWriter.setName(JOB_NAME + "_orderStatisticsItemWriter");
+        itemWriter.setResource(new FileSystemResource("output/" + fileName));
+        itemWriter.setEncoding("UTF-8");
+        itemWriter.setHeaderCallback(writer -> writer.write("total_amount,date"));
         itemWriter.afterPropertiesSet();
     
         return itemWriter;
     }
     
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
+    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date, String statisticsMode) throws Exception {
     
         YearMonth yearMonth = YearMonth.parse(date);
     
+        StatisticsMode mode = StatisticsMode.of(statisticsMode);
+    
+        if (mode == StatisticsMode.ROLLUP) {
+            // orders를 집계하지 않고 daily_order_rollup에서 최대 31행만 읽는다.
+            DailyOrderRollupItemReader itemReader = new DailyOrderRollupItemReader(dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth());
+            itemReader.setName(JOB_NAME + "_dailyOrderRollupItemReader");
+    
+            return itemReader;
+        }
+    
+        if (mode == StatisticsMode.STREAM) {
+            // 한 달의 주문을 cursor로 한 번만 읽으면서 일별로 합산한다. (page마다 GROUP BY를 다시 실행하지 않는다.)
+            OrderStatisticsStreamItemReader itemReader = new OrderStatisticsStreamItemReader(dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth());
+            itemReader.setName(JOB_NAME + "_orderStatisticsStreamItemReader");
+    
+            return itemReader;
+        }
+    
         Map<String, Object> parameters = new HashMap<>();
         parameters.put("startDate", yearMonth.atDay(1));
         parameters.put("endDate", yearMonth.atEndOfMonth());
@@ -129,8 +155,8 @@ public class AsyncUserConfiguration {
             .dataSource(dataSource)
             .rowMapper((rs, rowNum) ->
                 OrderStatistics.builder()
-                    .amount(rs.getString(1))
-                    .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
+                    .amount(rs.getLong(1))
+                    .date(rs.getDate(2).toLocalDate())
                     .build()
             )
             .pageSize(CHUNK) // chunk size와 동일하게 설정
@@ -146,11 +172,18 @@ public class AsyncUserConfiguration {
         return itemReader;
     }
     
+    @Bean(JOB_NAME + "_queryPlanGuardStep")
+    @JobScope
+    public Step queryPlanGuardStep(@Value("#{jobParameters[queryPlanGuard]}") String queryPlanGuard) {
+
+        return QueryPlanGuardTasklet.step(stepBuilderFactory, JOB_NAME + "_queryPlanGuardStep", dataSource, queryPlanGuard, ReaderQueryChecks.userJob());
+    }
+        
     @Bean(JOB_NAME + "_saveUseStep")
     public Step saveUseStep() {
         
         return stepBuilderFactory.get(JOB_NAME + "_saveUseStep")
-            .tasklet(new SaveUserTasklet(userRepository))
+            .tasklet(new SaveUserTasklet(dataSource))
             .build();
     }
     
@@ -158,51 +191,38 @@ public class AsyncUserConfiguration {
     public Step userLevelUpStep() throws Exception {
     
         return stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
-            .<User, Future<User>>chunk(CHUNK) // output type을 Future 제네릭으로 감싸주어야 Async를 사용할 수 있다.
+            .<User, Future<LevelUpDecision>>chunk(CHUNK) // output type을 Future 제네릭으로 감싸주어야 Async를 사용할 수 있다.
             .reader(this.itemReader())
             .processor(this.itemProcessor())
             .writer(this.itemWriter())
             .build();
     }
     
-    private AsyncItemWriter<User> itemWriter() {
+    private AsyncItemWriter<LevelUpDecision> itemWriter() {
         
-        ItemWriter<User> itemWriter = users -> users.forEach(user -> {
-            user.levelUp();
-            userRepository.save(user);
-        });
+        ItemWriter<LevelUpDecision> itemWriter = new JdbcLevelUpItemWriter(dataSource); // processor가 계산한 결과를 chunk 단위로 하나의 JDBC batch UPDATE로 저장한다.
     
-        AsyncItemWriter<User> asyncItemWriter = new AsyncItemWriter<>();
+        AsyncItemWriter<LevelUpDecision> asyncItemWriter = new AsyncItemWriter<>();
         asyncItemWriter.setDelegate(itemWriter);
     
         return asyncItemWriter;
     }
     
-    private AsyncItemProcessor<User, User> itemProcessor() {
+    private AsyncItemProcessor<User, LevelUpDecision> itemProcessor() {
     
-         ItemProcessor<User, User> itemProcessor = user -> {
-            // 등급 상향 대상 유저의 경우
-            if (user.availableLevelUp()) return user;
-        
-            return null;
-        };
+         ItemProcessor<User, LevelUpDecision> itemProcessor = user -> LevelUpDecision.of(user, levelRule); // 등급 상향 대상이 아니면 null을 반환하여 writer로 전달하지 않는다.
     
-        AsyncItemProcessor<User, User> asyncItemProcessor = new AsyncItemProcessor<>();
+        AsyncItemProcessor<User, LevelUpDecision> asyncItemProcessor = new AsyncItemProcessor<>();
         asyncItemProcessor.setDelegate(itemProcessor); // ItemProcessor를 Delegate로 감싼다.
         asyncItemProcessor.setTaskExecutor(taskExecutor);
     
         return asyncItemProcessor;
     }
     
-    private ItemReader<? extends User> itemReader() throws Exception {
+    private ItemReader<? extends User> itemReader() {
     
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-            .queryString("SELECT u FROM users u")
-            .entityManagerFactory(entityManagerFactory)
-            .pageSize(CHUNK) // pageSize는 보통 chunk size와 동일하게 설정한다.
-            .name(JOB_NAME + "_userItemReader")
-            .build();
-        itemReader.afterPropertiesSet();
+        UserKeysetItemReader itemReader = new UserKeysetItemReader(entityManagerFactory, CHUNK, null, null); // OFFSET 대신 마지막 id 기준으로 page를 조회한다.
+        itemReader.setName(JOB_NAME + "_userItemReader");
     
         return itemReader;
     }
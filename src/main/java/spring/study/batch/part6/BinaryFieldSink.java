@@ -0,0 +1,57 @@
+package spring.study.batch.part6;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * 필드를 ByteBuffer에 고정 길이 binary로 기록한다. (big-endian)
+ *
+ * - long, double: 8 byte / int: 4 byte
+ * - LocalDate: epoch day(int, null이면 Integer.MIN_VALUE)
+ * - String: UTF-8 byte 길이(int, null이면 -1) + UTF-8 byte
+ */
+public class BinaryFieldSink implements FieldSink {
+
+    private ByteBuffer buffer;
+
+    public BinaryFieldSink startRecord(ByteBuffer buffer) {
+
+        this.buffer = buffer;
+
+        return this;
+    }
+
+    @Override
+    public void putString(String value) {
+
+        if (Objects.isNull(value)) {
+            buffer.putInt(-1);
+            return;
+        }
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    @Override
+    public void putLong(long value) {
+        buffer.putLong(value);
+    }
+
+    @Override
+    public void putInt(int value) {
+        buffer.putInt(value);
+    }
+
+    @Override
+    public void putDouble(double value) {
+        buffer.putDouble(value);
+    }
+
+    @Override
+    public void putDate(LocalDate value) {
+        buffer.putInt(Objects.isNull(value) ? Integer.MIN_VALUE : (int) value.toEpochDay());
+    }
+}
@@ -0,0 +1,40 @@
+package spring.study.batch.part6;
+
+import org.springframework.batch.item.file.FlatFileItemWriter;
+
+import java.util.List;
+
+/**
+ * BeanWrapperFieldExtractor + DelimitedLineAggregator 대신 RecordBinder로 chunk의 모든 줄을 하나의 StringBuilder에 바로 기록하는 FlatFileItemWriter
+ * item마다 Object[], 필드별 String, 줄별 String을 만들지 않으며, StringBuilder는 chunk 사이에 재사용한다.
+ * (재시작, header/footer, transactional 등 나머지 동작은 FlatFileItemWriter와 같다.)
+ */
+public class BinderFlatFileItemWriter<T> extends FlatFileItemWriter<T> {
+
+    private final RecordBinder<? super T> binder;
+    private final CsvFieldSink sink;
+    private final StringBuilder lines = new StringBuilder();
+
+    public BinderFlatFileItemWriter(RecordBinder<? super T> binder, String delimiter) {
+        this.binder = binder;
+        this.sink = new CsvFieldSink(delimiter);
+        this.setLineAggregator(item -> { // doWrite()를 사용하지 않는 경로를 위한 LineAggregator
+            StringBuilder line = new StringBuilder();
+            binder.bind(item, new CsvFieldSink(delimiter).startLine(line));
+            return line.toString();
+        });
+    }
+
+    @Override
+    public synchronized String doWrite(List<? extends T> items) {
+
+        lines.setLength(0);
+
+        for (T item : items) {
+            binder.bind(item, sink.startLine(lines));
+            lines.append(this.lineSeparator);
+        }
+
+        return lines.toString();
+    }
+}
@@ -0,0 +1,175 @@
+package spring.study.batch.part6;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * DB에 바로 저장하지 않고 검증을 통과한 item을 임시 CSV 파일에 기록한다. (BulkLoadTasklet이 DB의 bulk load 기능으로 한 번에 저장)
+ * 컬럼 길이를 초과하는 등 저장할 수 없는 item은 "{임시 파일}.rejected.csv"에 사유와 함께 기록한다.
+ *
+ * 임시 파일 경로와 건수는 StepExecutionContext의 FILE_KEY, STAGED_KEY, REJECTED_KEY에 저장되기 때문에
+ * ExecutionContextPromotionListener로 JobExecutionContext에 올려서 다음 Step에서 사용한다.
+ */
+public class BulkLoadStagingItemWriter<T> implements ItemStreamWriter<T> {
+
+    public static final String FILE_KEY = "bulkLoad.file";
+    public static final String STAGED_KEY = "bulkLoad.staged";
+    public static final String REJECTED_KEY = "bulkLoad.rejected";
+
+    private static final int DEFAULT_MAX_LENGTH = 255; // VARCHAR(255)
+
+    private final String name;
+    private final String[] columns;
+    private final Function<? super T, Object[]> fieldExtractor;
+
+    private int maxLength = DEFAULT_MAX_LENGTH;
+
+    private FlatFileItemWriter<Object[]> stagingWriter;
+    private FlatFileItemWriter<Object[]> rejectedWriter;
+    private long staged;
+    private long rejected;
+
+    public BulkLoadStagingItemWriter(String name, String[] columns, Function<? super T, Object[]> fieldExtractor) {
+        this.name = name;
+        this.columns = columns;
+        this.fieldExtractor = fieldExtractor;
+    }
+
+    public void setMaxLength(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+
+        String file = executionContext.containsKey(FILE_KEY) ? executionContext.getString(FILE_KEY) : this.createTempFile(); // 재시작인 경우 같은 파일에 이어서 기록한다.
+
+        executionContext.putString(FILE_KEY, file);
+        staged = executionContext.getLong(STAGED_KEY, 0);
+        rejected = executionContext.getLong(REJECTED_KEY, 0);
+
+        String[] rejectedColumns = Arrays.copyOf(columns, columns.length + 1);
+        rejectedColumns[columns.length] = "reason";
+
+        stagingWriter = this.csvWriter(name + "Staging", file, columns);
+        rejectedWriter = this.csvWriter(name + "Rejected", file + ".rejected.csv", rejectedColumns);
+
+        stagingWriter.open(executionContext);
+        rejectedWriter.open(executionContext);
+    }
+
+    @Override
+    public void write(List<? extends T> items) throws Exception {
+
+        List<Object[]> stagedFields = new ArrayList<>(items.size());
+        List<Object[]> rejectedFields = new ArrayList<>();
+
+        for (T item : items) {
+
+            Object[] fields = fieldExtractor.apply(item);
+            String reason = this.validate(fields);
+
+            if (Objects.isNull(reason)) {
+                stagedFields.add(fields);
+                continue;
+            }
+
+            Object[] rejectedRow = Arrays.copyOf(fields, fields.length + 1);
+            rejectedRow[fields.length] = reason;
+            rejectedFields.add(rejectedRow);
+        }
+
+        if (!stagedFields.isEmpty()) stagingWriter.write(stagedFields);
+        if (!rejectedFields.isEmpty()) rejectedWriter.write(rejectedFields);
+
+        staged += stagedFields.size();
+        rejected += rejectedFields.size();
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+
+        stagingWriter.update(executionContext);
+        rejectedWriter.update(executionContext);
+
+        executionContext.putLong(STAGED_KEY, staged);
+        executionContext.putLong(REJECTED_KEY, rejected);
+    }
+
+    @Override
+    public void close() throws ItemStreamException {
+
+        if (Objects.nonNull(stagingWriter)) stagingWriter.close();
+        if (Objects.nonNull(rejectedWriter)) rejectedWriter.close();
+    }
+
+    private String validate(Object[] fields) {
+
+        if (fields.length != columns.length) return "컬럼 개수 불일치";
+
+        for (int i = 0; i < fields.length; i++) {
+            if (Objects.nonNull(fields[i]) && fields[i].toString().length() > maxLength) return columns[i] + " 길이 초과";
+        }
+
+        return null;
+    }
+
+    private String createTempFile() {
+
+        try {
+            return Files.createTempFile(name + "-", ".csv").toAbsolutePath().toString();
+        } catch (IOException e) {
+            throw new ItemStreamException("bulk load 임시 파일을 만들지 못했습니다.", e);
+        }
+    }
+
+    private FlatFileItemWriter<Object[]> csvWriter(String writerName, String file, String[] header) {
+
+        FlatFileItemWriter<Object[]> itemWriter = new FlatFileItemWriterBuilder<Object[]>()
+            .name(writerName)
+            .encoding("UTF-8")
+            .lineSeparator("\n") // LOAD DATA ... LINES TERMINATED BY '\n'과 맞춘다.
+            .resource(new FileSystemResource(file))
+            .lineAggregator(BulkLoadStagingItemWriter::toCsvLine)
+            .headerCallback(writer -> writer.write(String.join(",", header)))
+            .build();
+
+        try {
+            itemWriter.afterPropertiesSet();
+        } catch (Exception e) {
+            throw new ItemStreamException(e);
+        }
+
+        return itemWriter;
+    }
+
+    /**
+     * 모든 값을 큰따옴표로 감싸고 값 안의 큰따옴표는 두 번 쓴다. (H2 CSVREAD, MySQL LOAD DATA ... ENCLOSED BY '"' 모두 읽을 수 있는 형식)
+     */
+    static String toCsvLine(Object[] fields) {
+
+        StringBuilder line = new StringBuilder();
+
+        for (int i = 0; i < fields.length; i++) {
+
+            if (i > 0) line.append(',');
+            if (Objects.isNull(fields[i])) continue;
+
+            line.append('"').append(fields[i].toString().replace("\"", "\"\"")).append('"');
+        }
+
+        return line.toString();
+    }
+}
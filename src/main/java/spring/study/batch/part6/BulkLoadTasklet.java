@@ -0,0 +1,88 @@
+package spring.study.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * BulkLoadStagingItemWriter가 기록한 임시 CSV 파일을 DB의 bulk load 기능으로 한 번에 저장한다.
+ *
+ * - H2: INSERT INTO ... SELECT ... FROM CSVREAD(...)
+ * - MySQL: LOAD DATA LOCAL INFILE (JDBC URL에 allowLoadLocalInfile=true 설정 필요, application-mysql.yml 참고)
+ *
+ * 임시 파일 경로는 JobExecutionContext의 BulkLoadStagingItemWriter.FILE_KEY로 전달받고, 없으면 아무것도 하지 않는다.
+ * MySQL의 LOCAL 모드는 중복 키 등의 오류가 있는 행을 건너뛰기 때문에, 저장되지 않은 행 수를 DB가 거부한 건수로 기록한다.
+ */
+@Slf4j
+public class BulkLoadTasklet implements Tasklet {
+
+    public static final String LOADED_KEY = "bulkLoad.loaded";
+    public static final String DATABASE_REJECTED_KEY = "bulkLoad.databaseRejected";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final String[] columns;
+
+    public BulkLoadTasklet(DataSource dataSource, String table, String... columns) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.table = table;
+        this.columns = columns;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+
+        ExecutionContext jobExecutionContext = contribution.getStepExecution().getJobExecution().getExecutionContext();
+
+        if (!jobExecutionContext.containsKey(BulkLoadStagingItemWriter.FILE_KEY)) return RepeatStatus.FINISHED; // bulk load 대상이 아닌 경우
+
+        String file = jobExecutionContext.getString(BulkLoadStagingItemWriter.FILE_KEY);
+        long staged = jobExecutionContext.getLong(BulkLoadStagingItemWriter.STAGED_KEY, 0);
+        long rejected = jobExecutionContext.getLong(BulkLoadStagingItemWriter.REJECTED_KEY, 0);
+
+        int loaded = staged == 0 ? 0 : jdbcTemplate.update(createLoadSql(DatabaseType.fromMetaData(dataSource), file, table, columns));
+
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+        executionContext.putLong(LOADED_KEY, loaded);
+        executionContext.putLong(DATABASE_REJECTED_KEY, staged - loaded);
+        contribution.incrementWriteCount(loaded);
+
+        log.info("{} bulk load {}건 저장 (검증 실패 {}건, DB 거부 {}건)", table, loaded, rejected, staged - loaded);
+
+        if (rejected > 0) log.warn("검증에 실패한 행: {}.rejected.csv", file);
+
+        Files.deleteIfExists(Paths.get(file));
+
+        return RepeatStatus.FINISHED;
+    }
+
+    static String createLoadSql(DatabaseType databaseType, String file, String table, String[] columns) {
+
+        String path = file.replace("\\", "/").replace("'", "''");
+        String columnList = String.join(", ", columns);
+
+        switch (databaseType) {
+            case H2:
+                // 첫 번째 행(header)을 컬럼 이름으로 사용한다.
+                return "INSERT INTO " + table + " (" + columnList + ") SELECT " + columnList
+                    + " FROM CSVREAD('" + path + "', NULL, 'charset=UTF-8 fieldSeparator=,')";
+            case MYSQL:
+                return "LOAD DATA LOCAL INFILE '" + path + "' INTO TABLE " + table
+                    + " CHARACTER SET utf8mb4 FIELDS TERMINATED BY ',' OPTIONALLY ENCLOSED BY '\"' ESCAPED BY ''"
+                    + " LINES TERMINATED BY '\\n' IGNORE 1 LINES (" + columnList + ")";
+            default:
+                throw new IllegalStateException("bulk load를 지원하지 않는 DB입니다: " + databaseType);
+        }
+    }
+}
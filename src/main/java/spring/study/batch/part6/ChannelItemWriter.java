@@ -0,0 +1,418 @@
+package spring.study.batch.part6;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.support.AbstractItemStreamItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * FlatFileItemWriter(Writer로 한 줄씩) 대신 RecordBinder로 chunk를 direct ByteBuffer에 기록하고 FileChannel로 한 번에 쓰는 ItemWriter
+ *
+ * - CSV_GZIP: chunk마다 하나의 gzip member를 만든다. 여러 member를 이어 붙인 파일도 하나의 gzip 파일로 읽히기 때문에 chunk 경계에서 잘라도 올바른 파일이다.
+ * - NDJSON: names를 key로 한 줄에 하나의 JSON 객체
+ * - BINARY: record마다 [이후 byte 길이(int)][필드...] (필드 형식은 BinaryFieldSink 참고)
+ *
+ * 트랜잭션: chunk의 byte는 pending buffer에 모아 두었다가 chunk 트랜잭션의 beforeCommit에서 파일에 쓴다. (FlatFileItemWriter의 TransactionAwareBufferedWriter와 같은 방식)
+ * rollback된 chunk는 파일에 쓰지 않고 버리기 때문에, faultTolerant step이 chunk를 item 단위로 다시 처리(scan)해도 같은 record가 두 번 기록되지 않는다.
+ * 트랜잭션이 없는 경우(header 등)에는 바로 쓴다.
+ *
+ * 재시작: FlatFileItemWriter와 같이 update()에서 commit될 chunk까지의 파일 위치를 ExecutionContext에 저장하고,
+ * open()에서 그 위치로 파일을 잘라낸 후 이어서 기록한다. (commit 직전에 쓰고 실패한 chunk의 byte는 잘려서 사라진다.)
+ * chunk 하나가 모두 기록된 위치만 저장하기 때문에 잘린 파일도 항상 온전한 CSV/gzip/record로 끝난다.
+ */
+public class ChannelItemWriter<T> extends AbstractItemStreamItemWriter<T> implements InitializingBean {
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+    private static final String POSITION_KEY = "position";
+    private static final String WRITTEN_KEY = "written";
+    private static final byte[] NO_INPUT = new byte[0];
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final RecordBinder<? super T> binder;
+    private final String[] names;
+    private final OutputFormat format;
+
+    private Resource resource;
+    private String header; // 텍스트 형식의 첫 줄 (CSV만)
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private boolean saveState = true;
+
+    private FileChannel channel;
+    private ByteBuffer buffer; // 인코딩된 record
+    private ByteBuffer compressed; // CSV_GZIP의 deflate 결과
+    private ByteBuffer pending; // commit 될 때 파일에 쓸 byte (chunk 트랜잭션 동안 모은다.)
+    private boolean synchronizationRegistered;
+    private CharsetEncoder encoder;
+    private Deflater deflater;
+    private CRC32 crc;
+    private long memberSize;
+    private boolean memberStarted;
+
+    private final StringBuilder line = new StringBuilder();
+    private CsvFieldSink csvSink;
+    private JsonFieldSink jsonSink;
+    private BinaryFieldSink binarySink;
+
+    private long written;
+    private long committedWritten; // rollback 시 되돌릴 건수
+    private long position; // pending까지 포함한 파일 위치
+
+    public ChannelItemWriter(RecordBinder<? super T> binder, String[] names, OutputFormat format) {
+        this.binder = binder;
+        this.names = names;
+        this.format = format;
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setHeader(String header) {
+        this.header = header;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+
+        Assert.notNull(binder, "RecordBinder는 필수입니다.");
+        Assert.notNull(format, "OutputFormat은 필수입니다.");
+        Assert.notNull(resource, "Resource는 필수입니다.");
+        Assert.isTrue(format != OutputFormat.NDJSON || Objects.nonNull(names), "NDJSON은 필드 이름(names)이 필요합니다.");
+        Assert.isTrue(bufferSize >= 1_024, "bufferSize는 1KB 이상이어야 합니다.");
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+
+        super.open(executionContext);
+
+        try {
+            Path path = resource.getFile().toPath();
+            Files.createDirectories(path.toAbsolutePath().getParent());
+
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            pending = ByteBuffer.allocate(bufferSize);
+            synchronizationRegistered = false;
+            encoder = StandardCharsets.UTF_8.newEncoder();
+            csvSink = new CsvFieldSink(",");
+            jsonSink = Objects.isNull(names) ? null : new JsonFieldSink(names);
+            binarySink = new BinaryFieldSink();
+
+            if (format == OutputFormat.CSV_GZIP) {
+                compressed = ByteBuffer.allocateDirect(bufferSize);
+                deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true); // gzip header/trailer는 직접 기록한다.
+                crc = new CRC32();
+            }
+
+            String positionKey = this.getExecutionContextKey(POSITION_KEY);
+
+            if (saveState && executionContext.containsKey(positionKey)) { // 재시작: 마지막으로 commit된 chunk까지만 남긴다.
+                long position = executionContext.getLong(positionKey);
+                channel.truncate(position);
+                channel.position(position);
+                this.position = position;
+                written = executionContext.getLong(this.getExecutionContextKey(WRITTEN_KEY), 0);
+                committedWritten = written;
+                return;
+            }
+
+            channel.truncate(0);
+            position = 0;
+            written = 0;
+            committedWritten = 0;
+
+            if (format.isText() && format != OutputFormat.NDJSON && Objects.nonNull(header)) {
+                line.setLength(0);
+                line.append(header).append('\n');
+                this.encodeText();
+                this.endChunk();
+                this.flushPending();
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("출력 파일을 열 수 없습니다: " + resource, e);
+        }
+    }
+
+    @Override
+    public void write(List<? extends T> items) throws Exception {
+
+        try {
+            for (T item : items) {
+
+                if (format == OutputFormat.BINARY) {
+                    this.writeRecord(item);
+                    continue;
+                }
+
+                line.setLength(0);
+
+                if (format == OutputFormat.NDJSON) {
+                    binder.bind(item, jsonSink.startLine(line));
+                    jsonSink.endLine();
+                } else {
+                    binder.bind(item, csvSink.startLine(line));
+                }
+
+                line.append('\n');
+                this.encodeText();
+            }
+
+            this.endChunk();
+        } catch (Exception e) {
+            if (!TransactionSynchronizationManager.isSynchronizationActive()) this.discardPending(); // 트랜잭션이 있으면 rollback 시 버린다.
+            throw e;
+        }
+
+        written += items.size();
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            this.flushPending();
+            committedWritten = written;
+            return;
+        }
+
+        if (synchronizationRegistered) return; // 같은 트랜잭션에서 여러 번 호출된 경우 한 번만 등록한다.
+
+        synchronizationRegistered = true;
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                try {
+                    ChannelItemWriter.this.flushPending(); // 쓰기에 실패하면 chunk 트랜잭션도 rollback 된다.
+                } catch (IOException e) {
+                    throw new ItemStreamException("출력 파일에 쓸 수 없습니다: " + resource, e);
+                }
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+
+                synchronizationRegistered = false;
+
+                if (status == STATUS_COMMITTED) {
+                    committedWritten = written;
+                    return;
+                }
+
+                ChannelItemWriter.this.discardPending();
+            }
+        });
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+
+        super.update(executionContext);
+
+        if (!saveState || Objects.isNull(channel)) return;
+
+        // update()는 chunk 트랜잭션이 commit 되기 전에 호출되기 때문에 commit 시 쓰일 pending까지 포함한 위치를 저장한다.
+        executionContext.putLong(this.getExecutionContextKey(POSITION_KEY), position);
+        executionContext.putLong(this.getExecutionContextKey(WRITTEN_KEY), written);
+    }
+
+    @Override
+    public void close() {
+
+        super.close();
+
+        try {
+            if (Objects.nonNull(channel)) channel.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("출력 파일을 닫을 수 없습니다: " + resource, e);
+        } finally {
+            channel = null;
+            if (Objects.nonNull(deflater)) deflater.end();
+            deflater = null;
+        }
+    }
+
+    private void writeRecord(T item) throws IOException {
+
+        for (int attempt = 0; ; attempt++) {
+
+            int start = buffer.position();
+
+            try {
+                buffer.position(start + Integer.BYTES); // 길이는 record를 기록한 후에 채운다.
+                binder.bind(item, binarySink.startRecord(buffer));
+                buffer.putInt(start, buffer.position() - start - Integer.BYTES);
+                return;
+            } catch (BufferOverflowException | IllegalArgumentException e) {
+
+                buffer.position(start);
+
+                if (attempt > 0) throw new IllegalStateException("record가 bufferSize(" + bufferSize + ")보다 큽니다.", e);
+
+                this.drain(); // buffer를 비우고 한 번 더 시도한다.
+            }
+        }
+    }
+
+    private void encodeText() throws IOException {
+
+        CharBuffer chars = CharBuffer.wrap(line);
+
+        while (true) {
+
+            CoderResult result = encoder.encode(chars, buffer, true);
+
+            if (result.isOverflow()) {
+                this.drain();
+                continue;
+            }
+
+            if (result.isError()) result.throwException();
+
+            break;
+        }
+
+        encoder.reset();
+    }
+
+    /**
+     * buffer의 내용을 pending(CSV_GZIP은 deflate 후)으로 보낸다.
+     */
+    private void drain() throws IOException {
+
+        buffer.flip();
+
+        if (format == OutputFormat.CSV_GZIP) {
+
+            if (!memberStarted) {
+                this.writeFully(ByteBuffer.wrap(GZIP_HEADER));
+                memberStarted = true;
+            }
+
+            memberSize += buffer.remaining();
+            crc.update(buffer.duplicate());
+            deflater.setInput(buffer);
+
+            while (!deflater.needsInput()) {
+                this.deflate();
+            }
+
+            deflater.setInput(NO_INPUT); // Deflater가 buffer를 참조하고 있기 때문에 clear() 후의 내용을 다시 읽지 않도록 끊는다.
+        } else {
+            this.writeFully(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    /**
+     * chunk를 모두 pending으로 보낸다. CSV_GZIP은 gzip member를 닫는다.
+     */
+    private void endChunk() throws IOException {
+
+        this.drain();
+
+        if (format != OutputFormat.CSV_GZIP || !memberStarted) return;
+
+        deflater.finish();
+
+        while (!deflater.finished()) {
+            this.deflate();
+        }
+
+        ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        trailer.putInt((int) crc.getValue()).putInt((int) memberSize).flip();
+        this.writeFully(trailer);
+
+        deflater.reset();
+        crc.reset();
+        memberSize = 0;
+        memberStarted = false;
+    }
+
+    private void deflate() throws IOException {
+
+        deflater.deflate(compressed);
+
+        if (compressed.hasRemaining() && !deflater.finished() && !deflater.needsInput()) return; // 출력 buffer가 찰 때까지 모은다.
+
+        compressed.flip();
+        this.writeFully(compressed);
+        compressed.clear();
+    }
+
+    /**
+     * 파일에 쓸 byte를 pending에 모은다. (commit 될 때 flushPending()으로 파일에 쓴다.)
+     */
+    private void writeFully(ByteBuffer source) {
+
+        if (pending.remaining() < source.remaining()) {
+
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + source.remaining()));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+
+        position += source.remaining();
+        pending.put(source);
+    }
+
+    private void flushPending() throws IOException {
+
+        pending.flip();
+
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+
+        pending.clear();
+    }
+
+    /**
+     * rollback된 chunk의 byte와 인코딩/압축 중간 상태를 버린다.
+     */
+    private void discardPending() {
+
+        position -= pending.position();
+        written = committedWritten;
+        pending.clear();
+        buffer.clear();
+        encoder.reset();
+
+        if (format == OutputFormat.CSV_GZIP) {
+            deflater.reset();
+            crc.reset();
+            memberSize = 0;
+            memberStarted = false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package spring.study.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 하나의 큰 CSV 파일을 gridSize개의 byte 범위로 나누는 Partitioner (MultiResourcePartitioner는 파일이 여러 개로 나뉘어 있어야 한다.)
+ * 범위의 경계는 줄의 시작 위치로 맞추고 header(linesToSkip)는 첫 번째 범위에서 제외하기 때문에,
+ * 각 partition의 MappedCsvItemReader는 startOffset ~ endOffset에서 시작하는 줄만 읽으면 된다.
+ *
+ * - 빈 범위(줄이 범위보다 긴 경우)는 만들지 않기 때문에 partition 수가 gridSize보다 적을 수 있다.
+ * - 경계를 '\n' 기준으로 맞추기 때문에 따옴표 안에 줄바꿈이 있는 필드는 지원하지 않는다.
+ * - resource.isFile()이 false이면(jar 안의 resource) 범위 없이 하나의 partition만 만든다.
+ * - 범위는 StepExecutionContext에 저장되기 때문에 재시작 시 실패한 partition만 같은 범위에서 (reader의 offset부터) 이어서 읽는다.
+ */
+@Slf4j
+public class CsvByteRangePartitioner implements Partitioner {
+
+    public static final String START_OFFSET_KEY = "startOffset";
+    public static final String END_OFFSET_KEY = "endOffset";
+
+    private static final int SCAN_BUFFER_SIZE = 8_192;
+
+    private final Resource resource;
+    private final int linesToSkip;
+
+    public CsvByteRangePartitioner(Resource resource, int linesToSkip) {
+        this.resource = resource;
+        this.linesToSkip = linesToSkip;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+
+        if (!resource.isFile()) { // jar 안의 resource는 byte 위치로 읽을 수 없기 때문에 파일 전체를 하나의 partition으로 읽는다.
+            log.info("파일 시스템의 파일이 아니기 때문에 나누지 않습니다: {}", resource);
+            return Collections.singletonMap(String.format("partition%05d", 0), new ExecutionContext());
+        }
+
+        try (FileChannel channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+
+            ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            long fileSize = channel.size();
+            long dataStart = this.skipBom(channel, buffer);
+
+            for (int i = 0; i < linesToSkip; i++) {
+                dataStart = this.nextLineStart(channel, buffer, dataStart);
+            }
+
+            long rangeSize = Math.max(1, (fileSize - dataStart + gridSize - 1) / gridSize);
+            Map<String, ExecutionContext> result = new HashMap<>();
+            long start = dataStart;
+
+            for (int i = 0; i < gridSize && start < fileSize; i++) {
+
+                long end = i == gridSize - 1 ? fileSize : this.nextLineStart(channel, buffer, Math.max(start, start + rangeSize - 1)); // 범위 끝을 포함한 줄까지
+
+                ExecutionContext executionContext = new ExecutionContext();
+                executionContext.putLong(START_OFFSET_KEY, start);
+                executionContext.putLong(END_OFFSET_KEY, end);
+                result.put(String.format("partition%05d", i), executionContext);
+
+                log.debug("partition{}: byte {} ~ {}", i, start, end);
+
+                start = end;
+            }
+
+            return result;
+        } catch (IOException e) {
+            throw new ItemStreamException("파일을 나눌 수 없습니다: " + resource, e);
+        }
+    }
+
+    /**
+     * position부터 찾은 첫 번째 '\n' 다음 위치 (없으면 파일 끝)
+     */
+    private long nextLineStart(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+
+        long fileSize = channel.size();
+
+        while (position < fileSize) {
+
+            buffer.clear();
+            int read = channel.read(buffer, position);
+
+            if (read <= 0) break;
+
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') return position + i + 1;
+            }
+
+            position += read;
+        }
+
+        return fileSize;
+    }
+
+    private long skipBom(FileChannel channel, ByteBuffer buffer) throws IOException {
+
+        buffer.clear();
+        int read = channel.read(buffer, 0);
+
+        return read >= 3 && buffer.get(0) == (byte) 0xEF && buffer.get(1) == (byte) 0xBB && buffer.get(2) == (byte) 0xBF ? 3 : 0;
+    }
+}
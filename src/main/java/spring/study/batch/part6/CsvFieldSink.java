@@ -0,0 +1,103 @@
+package spring.study.batch.part6;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * 필드를 구분자로 이어서 StringBuilder에 바로 기록한다. (DelimitedLineAggregator와 같은 형식이며 값을 quote 하지 않는다.)
+ * long/int/LocalDate를 String으로 변환하지 않고 StringBuilder에 숫자를 직접 추가한다.
+ */
+public class CsvFieldSink implements FieldSink {
+
+    private final String delimiter;
+
+    private StringBuilder buffer;
+    private boolean first;
+
+    public CsvFieldSink(String delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * buffer의 끝에 새로운 줄을 기록하기 시작한다.
+     */
+    public CsvFieldSink startLine(StringBuilder buffer) {
+
+        this.buffer = buffer;
+        this.first = true;
+
+        return this;
+    }
+
+    @Override
+    public void putString(String value) {
+
+        this.separate();
+
+        if (Objects.nonNull(value)) buffer.append(value);
+    }
+
+    @Override
+    public void putLong(long value) {
+
+        this.separate();
+        buffer.append(value);
+    }
+
+    @Override
+    public void putInt(int value) {
+
+        this.separate();
+        buffer.append(value);
+    }
+
+    /**
+     * 소수점 둘째 자리까지 기록한다. (Double.toString()의 지수 표기(1.0E7)를 사용하지 않는다.)
+     */
+    @Override
+    public void putDouble(double value) {
+
+        this.separate();
+
+        long hundredths = Math.round(value * 100);
+
+        if (hundredths < 0) {
+            buffer.append('-');
+            hundredths = -hundredths;
+        }
+
+        buffer.append(hundredths / 100).append('.');
+        this.appendTwoDigits((int) (hundredths % 100));
+    }
+
+    @Override
+    public void putDate(LocalDate value) {
+
+        this.separate();
+
+        if (Objects.isNull(value)) return;
+
+        int year = value.getYear();
+
+        if (year < 1000 || year > 9999) { // LocalDate.toString()의 부호/자릿수 규칙을 그대로 따른다.
+            buffer.append(value);
+            return;
+        }
+
+        buffer.append(year).append('-');
+        this.appendTwoDigits(value.getMonthValue());
+        buffer.append('-');
+        this.appendTwoDigits(value.getDayOfMonth());
+    }
+
+    private void appendTwoDigits(int value) {
+
+        buffer.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    private void separate() {
+
+        if (first) first = false;
+        else buffer.append(delimiter);
+    }
+}
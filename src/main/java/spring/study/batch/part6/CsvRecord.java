@@ -0,0 +1,151 @@
+package spring.study.batch.part6;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * MappedCsvItemReader가 현재 줄의 필드 위치(byte offset)만 기록해 둔 view
+ * 필드를 읽을 때 mapped buffer에서 바로 변환하기 때문에 줄 String, String[], FieldSet을 만들지 않는다. (다음 줄을 읽으면 재사용된다.)
+ * FieldSet.readString()/readInt()와 같이 앞뒤 공백을 제거하고, 따옴표로 감싼 필드는 따옴표를 제거한다. ("" → ")
+ */
+public class CsvRecord {
+
+    private static final int MAX_FIELDS = 256;
+
+    private ByteBuffer buffer;
+    private final int[] starts = new int[MAX_FIELDS];
+    private final int[] ends = new int[MAX_FIELDS];
+    private final boolean[] quoted = new boolean[MAX_FIELDS];
+    private int count;
+
+    private byte[] scratch = new byte[256];
+
+    void reset(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.count = 0;
+    }
+
+    void addField(int start, int end, boolean quoted) {
+
+        if (count == MAX_FIELDS) throw new IllegalStateException("한 줄의 필드는 " + MAX_FIELDS + "개를 넘을 수 없습니다.");
+
+        this.starts[count] = start;
+        this.ends[count] = end;
+        this.quoted[count] = quoted;
+        count++;
+    }
+
+    public int getFieldCount() {
+        return count;
+    }
+
+    public String getString(int index) {
+
+        this.checkIndex(index);
+
+        int start = this.trimStart(index);
+        int end = this.trimEnd(index, start);
+
+        if (quoted[index] && end - start >= 2 && buffer.get(start) == '"' && buffer.get(end - 1) == '"') {
+            return this.unquote(start + 1, end - 1);
+        }
+
+        int length = end - start;
+
+        if (scratch.length < length) scratch = new byte[Math.max(length, scratch.length * 2)];
+
+        for (int i = 0; i < length; i++) {
+            scratch[i] = buffer.get(start + i);
+        }
+
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public int getInt(int index) {
+
+        long value = this.getLong(index);
+
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) throw new NumberFormatException("int 범위를 벗어났습니다: " + value);
+
+        return (int) value;
+    }
+
+    /**
+     * 숫자를 byte에서 바로 변환한다. (String을 만들지 않는다.)
+     */
+    public long getLong(int index) {
+
+        this.checkIndex(index);
+
+        int start = this.trimStart(index);
+        int end = this.trimEnd(index, start);
+
+        if (quoted[index] && end - start >= 2 && buffer.get(start) == '"') {
+            start++;
+            end--;
+        }
+
+        if (start == end) throw new NumberFormatException("빈 값은 숫자로 변환할 수 없습니다. (field " + index + ")");
+
+        boolean negative = buffer.get(start) == '-';
+        int i = negative || buffer.get(start) == '+' ? start + 1 : start;
+        long value = 0;
+
+        if (i == end) throw new NumberFormatException("숫자가 아닙니다: " + this.getString(index));
+
+        for (; i < end; i++) {
+
+            int digit = buffer.get(i) - '0';
+
+            if (digit < 0 || digit > 9) throw new NumberFormatException("숫자가 아닙니다: " + this.getString(index));
+
+            value = Math.multiplyExact(value, 10) - digit; // 음수로 누적하여 Long.MIN_VALUE까지 표현한다.
+        }
+
+        return negative ? value : Math.negateExact(value);
+    }
+
+    private String unquote(int start, int end) {
+
+        int length = 0;
+
+        if (scratch.length < end - start) scratch = new byte[Math.max(end - start, scratch.length * 2)];
+
+        for (int i = start; i < end; i++) {
+
+            byte b = buffer.get(i);
+            scratch[length++] = b;
+
+            if (b == '"' && i + 1 < end && buffer.get(i + 1) == '"') i++; // "" → "
+        }
+
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private int trimStart(int index) {
+
+        int start = starts[index];
+
+        while (start < ends[index] && isWhitespace(buffer.get(start))) start++;
+
+        return start;
+    }
+
+    private int trimEnd(int index, int start) {
+
+        int end = ends[index];
+
+        while (end > start && isWhitespace(buffer.get(end - 1))) end--;
+
+        return end;
+    }
+
+    private void checkIndex(int index) {
+
+        if (index < 0 || index >= count) throw new IndexOutOfBoundsException("필드 " + index + "가 없습니다. (필드 수: " + count + ")");
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+}
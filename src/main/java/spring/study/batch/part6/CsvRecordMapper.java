@@ -0,0 +1,10 @@
+package spring.study.batch.part6;
+
+/**
+ * CsvRecord의 필드를 읽어 item을 만든다. (FieldSetMapper 대신 사용)
+ */
+@FunctionalInterface
+public interface CsvRecordMapper<T> {
+
+    T map(CsvRecord record);
+}
@@ -0,0 +1,39 @@
+package spring.study.batch.part6;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.Objects;
+
+/**
+ * 테이블에 데이터가 있으면 Step을 실패시킨다.
+ * id를 직접 정해서 저장하는 Job(SyntheticDataTasklet)이 중간에 PK 중복으로 실패하지 않도록 첫 번째 Step에서 먼저 확인한다.
+ * Step이 COMPLETED 된 후의 재시작에서는 다시 실행되지 않기 때문에, 중간에 실패한 Job은 이어서 저장할 수 있다.
+ */
+public class EmptyTableCheckTasklet implements Tasklet {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String[] tables;
+
+    public EmptyTableCheckTasklet(DataSource dataSource, String... tables) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.tables = tables;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+
+        for (String table : tables) {
+
+            Long minId = jdbcTemplate.queryForObject("SELECT MIN(id) FROM " + table, Long.class); // PK index만 확인한다.
+
+            if (Objects.nonNull(minId)) throw new IllegalStateException(table + " 테이블이 비어있지 않습니다. 데이터를 삭제한 후에 실행하세요.");
+        }
+
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -0,0 +1,20 @@
+package spring.study.batch.part6;
+
+import java.time.LocalDate;
+
+/**
+ * RecordBinder가 item의 필드를 순서대로 기록하는 대상 (CSV 한 줄 또는 PreparedStatement의 parameter)
+ * primitive 값은 primitive 그대로 전달하기 때문에 Object[] 변환이나 boxing이 발생하지 않는다.
+ */
+public interface FieldSink {
+
+    void putString(String value);
+
+    void putLong(long value);
+
+    void putInt(int value);
+
+    void putDouble(double value);
+
+    void putDate(LocalDate value);
+}
@@ -0,0 +1,111 @@
+package spring.study.batch.part6;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 데이터 건수와 실행 환경으로 partition 개수(gridSize)를 정한다. (고정된 gridSize 8 대신 사용)
+ *
+ * - 데이터 기준: rowCount / targetRowsPerPartition (작은 데이터를 여러 partition으로 쪼개지 않는다.)
+ * - 동시 실행 상한: min(CPU 수, TaskExecutor가 실제로 늘릴 수 있는 thread 수, DataSource pool 크기 - RESERVED_CONNECTIONS)
+ *   partition마다 chunk 트랜잭션의 Connection을 하나씩 사용하기 때문에 pool보다 많은 partition은 Connection을 기다리기만 한다.
+ * - gridSize = min(데이터 기준, 동시 실행 상한), JobParameter로 지정한 값(override)이 있으면 그 값을 그대로 사용한다.
+ *
+ * TaskExecutor, DataSource의 크기를 알 수 없는 경우(ThreadPoolTaskExecutor, HikariDataSource가 아닌 경우)에는 상한에서 제외한다.
+ */
+@Getter
+public class GridSizePolicy {
+
+    private static final int RESERVED_CONNECTIONS = 2; // JobRepository 갱신, manager Step에서 사용할 Connection
+    private static final int UNKNOWN = Integer.MAX_VALUE;
+
+    private final long targetRowsPerPartition;
+    private final int availableProcessors;
+    private final int executorPoolSize;
+    private final int dataSourcePoolSize;
+
+    public GridSizePolicy(long targetRowsPerPartition, int availableProcessors, int executorPoolSize, int dataSourcePoolSize) {
+
+        if (targetRowsPerPartition <= 0) throw new IllegalArgumentException("targetRowsPerPartition은 0보다 커야 합니다: " + targetRowsPerPartition);
+
+        this.targetRowsPerPartition = targetRowsPerPartition;
+        this.availableProcessors = availableProcessors;
+        this.executorPoolSize = executorPoolSize;
+        this.dataSourcePoolSize = dataSourcePoolSize;
+    }
+
+    public static GridSizePolicy of(long targetRowsPerPartition, TaskExecutor taskExecutor, DataSource dataSource) {
+
+        return new GridSizePolicy(targetRowsPerPartition, Runtime.getRuntime().availableProcessors(), executorPoolSizeOf(taskExecutor), dataSourcePoolSizeOf(dataSource));
+    }
+
+    public Decision decide(long rowCount, Integer override) {
+
+        int concurrency = Math.max(1, Math.min(availableProcessors, Math.min(executorPoolSize, dataSourcePoolSize == UNKNOWN ? UNKNOWN : dataSourcePoolSize - RESERVED_CONNECTIONS)));
+        int byRows = (int) Math.max(1, Math.min(Integer.MAX_VALUE, (rowCount + targetRowsPerPartition - 1) / targetRowsPerPartition));
+
+        String limits = String.format("rows=%d, 목표 %d건/partition → %d, CPU %d, executor %s, DB pool %s(-%d) → 동시 실행 상한 %d",
+            rowCount, targetRowsPerPartition, byRows, availableProcessors, format(executorPoolSize), format(dataSourcePoolSize), RESERVED_CONNECTIONS, concurrency);
+
+        if (Objects.nonNull(override) && override > 0) {
+            String warning = override > concurrency ? " (동시 실행 상한보다 커서 일부 partition은 대기한다.)" : "";
+            return new Decision(override, concurrency, rowCount, limits + ", gridSize JobParameter " + override + " 사용" + warning);
+        }
+
+        int gridSize = Math.min(byRows, concurrency);
+
+        return new Decision(gridSize, concurrency, rowCount, limits + " → gridSize " + gridSize);
+    }
+
+    /**
+     * ThreadPoolTaskExecutor는 queue가 가득 차야 core 이상으로 thread를 늘리기 때문에, queue 크기가 무제한이면 core pool size가 실제 동시 실행 수다.
+     */
+    static int executorPoolSizeOf(TaskExecutor taskExecutor) {
+
+        if (!(taskExecutor instanceof ThreadPoolTaskExecutor)) return UNKNOWN;
+
+        ThreadPoolTaskExecutor executor = (ThreadPoolTaskExecutor) taskExecutor;
+        BlockingQueue<Runnable> queue = executor.getThreadPoolExecutor().getQueue();
+        boolean unboundedQueue = queue.remainingCapacity() + queue.size() == Integer.MAX_VALUE;
+
+        return unboundedQueue ? executor.getCorePoolSize() : executor.getMaxPoolSize();
+    }
+
+    static int dataSourcePoolSizeOf(DataSource dataSource) {
+
+        try {
+            if (Objects.nonNull(dataSource) && dataSource.isWrapperFor(HikariDataSource.class)) return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+        } catch (SQLException e) {
+            return UNKNOWN;
+        }
+
+        return UNKNOWN;
+    }
+
+    private static String format(int size) {
+        return size == UNKNOWN ? "알 수 없음" : String.valueOf(size);
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class Decision {
+
+        private final int gridSize;
+        private final int concurrency;
+        private final long rowCount;
+        private final String reason;
+
+        @Override
+        public String toString() {
+            return reason;
+        }
+    }
+}
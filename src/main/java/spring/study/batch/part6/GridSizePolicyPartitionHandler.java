@@ -0,0 +1,58 @@
+package spring.study.batch.part6;
+
+import io.micrometer.core.instrument.util.StringUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.Collection;
+import java.util.function.ToLongFunction;
+
+/**
+ * 실행할 때마다 GridSizePolicy로 gridSize를 정하는 TaskExecutorPartitionHandler
+ * rowCounter로 대상 건수를 조회하고, gridSize JobParameter가 있으면 그 값을 사용한다.
+ * 결정한 값과 근거는 manager Step의 ExecutionContext에 저장된다. (재시작 시에는 이전 partition을 그대로 사용하기 때문에 gridSize가 적용되지 않는다.)
+ *
+ * setGridSize()로 handler의 필드를 바꾸지 않고 split()에 바로 전달하기 때문에 같은 handler를 여러 Job이 동시에 사용해도 된다.
+ */
+@Slf4j
+public class GridSizePolicyPartitionHandler extends TaskExecutorPartitionHandler {
+
+    public static final String GRID_SIZE_PARAMETER = "gridSize";
+
+    public static final String GRID_SIZE_KEY = "gridSize.chosen";
+    public static final String CONCURRENCY_KEY = "gridSize.concurrency";
+    public static final String ROW_COUNT_KEY = "gridSize.rowCount";
+    public static final String REASON_KEY = "gridSize.reason";
+
+    private final GridSizePolicy policy;
+    private final ToLongFunction<StepExecution> rowCounter;
+
+    public GridSizePolicyPartitionHandler(GridSizePolicy policy, ToLongFunction<StepExecution> rowCounter) {
+        this.policy = policy;
+        this.rowCounter = rowCounter;
+    }
+
+    @Override
+    public Collection<StepExecution> handle(StepExecutionSplitter stepSplitter, StepExecution managerStepExecution) throws Exception {
+
+        String override = managerStepExecution.getJobParameters().getString(GRID_SIZE_PARAMETER);
+
+        GridSizePolicy.Decision decision = policy.decide(
+            rowCounter.applyAsLong(managerStepExecution),
+            StringUtils.isEmpty(override) ? null : Integer.valueOf(override.trim())
+        );
+
+        ExecutionContext executionContext = managerStepExecution.getExecutionContext();
+        executionContext.putInt(GRID_SIZE_KEY, decision.getGridSize());
+        executionContext.putInt(CONCURRENCY_KEY, decision.getConcurrency());
+        executionContext.putLong(ROW_COUNT_KEY, decision.getRowCount());
+        executionContext.putString(REASON_KEY, decision.getReason());
+
+        log.info("{}: {}", managerStepExecution.getStepName(), decision);
+
+        return this.doHandle(managerStepExecution, stepSplitter.split(managerStepExecution, decision.getGridSize()));
+    }
+}
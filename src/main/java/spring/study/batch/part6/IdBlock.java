@@ -0,0 +1,25 @@
+package spring.study.batch.part6;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * 테이블 별로 다음에 할당할 id를 저장한다. (IdBlockAllocator가 blockSize 단위로 증가시킨다.)
+ */
+@Entity
+@Table(name = "id_block")
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdBlock {
+
+    @Id
+    private String name; // id를 사용하는 테이블 이름
+
+    private long nextVal;
+}
@@ -0,0 +1,187 @@
+package spring.study.batch.part6;
+
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * id_block 테이블에서 blockSize 만큼의 id 범위를 한 번에 할당받고, thread 별로 그 범위 안에서 id를 꺼내 쓴다. (pooled optimizer)
+ * IDENTITY 전략과 달리 INSERT 전에 id를 알 수 있기 때문에 JDBC batch INSERT가 가능하고,
+ * DB 조회는 blockSize 건에 한 번만 발생한다.
+ *
+ * - 할당은 chunk 트랜잭션과 별도의 Connection에서 SELECT ... FOR UPDATE로 처리하고 바로 commit 하기 때문에
+ *   multi-thread/partition step에서 동시에 할당해도 범위가 겹치지 않고, chunk가 rollback 되어도 id를 다시 할당하지 않는다. (id에 빈 값이 생길 수 있다.)
+ * - id_block에 행이 없으면 해당 테이블의 MAX(id) + 1부터 시작한다.
+ */
+public class IdBlockAllocator {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1_000;
+
+    private static final String SELECT_SQL = "SELECT next_val FROM id_block WHERE name = ? FOR UPDATE";
+    private static final String UPDATE_SQL = "UPDATE id_block SET next_val = ? WHERE name = ?";
+    private static final String INSERT_SQL = "INSERT INTO id_block (name, next_val) VALUES (?, ?)";
+
+    private final ConnectionSource connectionSource;
+    private final int blockSize;
+    private final ThreadLocal<Map<String, long[]>> blocks = ThreadLocal.withInitial(HashMap::new); // name → { 다음 id, 범위의 끝(미포함) }
+
+    public IdBlockAllocator(ConnectionSource connectionSource, int blockSize) {
+        this.connectionSource = connectionSource;
+        this.blockSize = blockSize;
+    }
+
+    public IdBlockAllocator(DataSource dataSource, int blockSize) {
+        this(ConnectionSource.of(dataSource), blockSize);
+    }
+
+    public IdBlockAllocator(DataSource dataSource) {
+        this(dataSource, DEFAULT_BLOCK_SIZE);
+    }
+
+    public long nextId(String name) {
+
+        long[] block = blocks.get().get(name);
+
+        if (block == null || block[0] >= block[1]) {
+
+            long start = this.allocate(name, blockSize, 0);
+
+            block = new long[] { start, start + blockSize };
+            blocks.get().put(name, block);
+        }
+
+        return block[0]++;
+    }
+
+    /**
+     * id를 직접 지정하여 저장한 경우, 다음 할당이 minNextVal 이상에서 시작하도록 한다.
+     */
+    public void advanceTo(String name, long minNextVal) {
+
+        blocks.get().remove(name);
+
+        this.allocate(name, 0, minNextVal);
+    }
+
+    /**
+     * next_val을 size 만큼 증가시키고 증가 전의 값을 반환한다. (next_val이 minNextVal보다 작으면 minNextVal부터 시작한다.)
+     */
+    private long allocate(String name, int size, long minNextVal) {
+
+        try {
+            Connection connection = connectionSource.open();
+
+            try {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+
+                try {
+                    long start = Math.max(this.lockNextVal(connection, name), minNextVal);
+
+                    try (PreparedStatement ps = connection.prepareStatement(UPDATE_SQL)) {
+                        ps.setLong(1, start + size);
+                        ps.setString(2, name);
+                        ps.executeUpdate();
+                    }
+
+                    connection.commit();
+
+                    return start;
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            } finally {
+                connectionSource.close(connection);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(name + " id 범위를 할당하지 못했습니다.", e);
+        }
+    }
+
+    private long lockNextVal(Connection connection, String name) throws SQLException {
+
+        for (int attempt = 0; attempt < 2; attempt++) {
+
+            try (PreparedStatement ps = connection.prepareStatement(SELECT_SQL)) {
+
+                ps.setString(1, name);
+
+                try (ResultSet rs = ps.executeQuery()) {
+                    if (rs.next()) return rs.getLong(1);
+                }
+            }
+
+            try (PreparedStatement ps = connection.prepareStatement(INSERT_SQL)) {
+
+                ps.setString(1, name);
+                ps.setLong(2, this.initialValue(connection, name));
+                ps.executeUpdate();
+            } catch (SQLException e) {
+                // 다른 thread가 먼저 행을 만든 경우 (PK 중복) 다시 조회한다.
+                if (!String.valueOf(e.getSQLState()).startsWith("23")) throw e;
+            }
+        }
+
+        throw new IllegalStateException("id_block 행을 찾을 수 없습니다: " + name);
+    }
+
+    private long initialValue(Connection connection, String name) throws SQLException {
+
+        try (PreparedStatement ps = connection.prepareStatement("SELECT COALESCE(MAX(id), 0) + 1 FROM " + name);
+             ResultSet rs = ps.executeQuery()) {
+
+            rs.next();
+
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * 할당에 사용할 Connection (Spring의 DataSource 또는 Hibernate의 ConnectionProvider)
+     */
+    public interface ConnectionSource {
+
+        Connection open() throws SQLException;
+
+        void close(Connection connection) throws SQLException;
+
+        static ConnectionSource of(DataSource dataSource) {
+
+            return new ConnectionSource() {
+                @Override
+                public Connection open() throws SQLException {
+                    return dataSource.getConnection(); // 트랜잭션에 바인딩된 Connection을 사용하지 않는다.
+                }
+
+                @Override
+                public void close(Connection connection) throws SQLException {
+                    connection.close();
+                }
+            };
+        }
+
+        static ConnectionSource of(ConnectionProvider connectionProvider) {
+
+            return new ConnectionSource() {
+                @Override
+                public Connection open() throws SQLException {
+                    return connectionProvider.getConnection();
+                }
+
+                @Override
+                public void close(Connection connection) throws SQLException {
+                    connectionProvider.closeConnection(connection);
+                }
+            };
+        }
+    }
+}
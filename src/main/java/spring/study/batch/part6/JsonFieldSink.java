@@ -0,0 +1,107 @@
+package spring.study.batch.part6;
+
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * 필드를 names 순서의 key로 {"amount":1000,"date":"2020-11-01"} 형식의 JSON 객체 한 줄로 StringBuilder에 기록한다.
+ */
+public class JsonFieldSink implements FieldSink {
+
+    private final String[] keys; // "\"amount\":" 처럼 미리 만들어 둔 key
+
+    private final CsvFieldSink numberSink = new CsvFieldSink(""); // 숫자/날짜 형식은 CSV와 같게 기록한다.
+
+    private StringBuilder buffer;
+    private int index;
+
+    public JsonFieldSink(String[] names) {
+
+        this.keys = new String[names.length];
+
+        for (int i = 0; i < names.length; i++) {
+            keys[i] = "\"" + names[i] + "\":";
+        }
+    }
+
+    public JsonFieldSink startLine(StringBuilder buffer) {
+
+        this.buffer = buffer;
+        this.index = 0;
+        buffer.append('{');
+
+        return this;
+    }
+
+    public void endLine() {
+
+        buffer.append('}');
+    }
+
+    @Override
+    public void putString(String value) {
+
+        this.key();
+
+        if (Objects.isNull(value)) {
+            buffer.append("null");
+            return;
+        }
+
+        buffer.append('"');
+
+        for (int i = 0; i < value.length(); i++) {
+
+            char c = value.charAt(i);
+
+            if (c == '"' || c == '\\') buffer.append('\\').append(c);
+            else if (c < 0x20) buffer.append(String.format("\\u%04x", (int) c));
+            else buffer.append(c);
+        }
+
+        buffer.append('"');
+    }
+
+    @Override
+    public void putLong(long value) {
+
+        this.key();
+        buffer.append(value);
+    }
+
+    @Override
+    public void putInt(int value) {
+
+        this.key();
+        buffer.append(value);
+    }
+
+    @Override
+    public void putDouble(double value) {
+
+        this.key();
+        numberSink.startLine(buffer).putDouble(value);
+    }
+
+    @Override
+    public void putDate(LocalDate value) {
+
+        this.key();
+
+        if (Objects.isNull(value)) {
+            buffer.append("null");
+            return;
+        }
+
+        buffer.append('"');
+        numberSink.startLine(buffer).putDate(value);
+        buffer.append('"');
+    }
+
+    private void key() {
+
+        if (index > 0) buffer.append(',');
+
+        buffer.append(keys[index++]);
+    }
+}
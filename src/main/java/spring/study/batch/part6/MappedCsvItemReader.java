@@ -0,0 +1,272 @@
+package spring.study.batch.part6;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ParseException;
+import org.springframework.batch.item.support.AbstractItemStreamItemReader;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * FlatFileItemReader(줄마다 String, String[], FieldSet 생성) 대신 파일을 memory-map 하고 byte에서 바로 필드를 나누는 CSV ItemReader
+ * 한 줄을 읽을 때 필드의 위치만 CsvRecord에 기록하고, CsvRecordMapper가 필요한 필드만 변환하기 때문에 record마다 남는 객체는 item의 필드 값뿐이다.
+ *
+ * - 구분자는 ',', 줄바꿈은 \n 또는 \r\n (UTF-8 BOM은 건너뛴다.)
+ * - 따옴표로 감싼 필드 안의 ',', 줄바꿈은 필드 값으로 읽는다.
+ * - 빈 줄은 건너뛴다.
+ * - 2GB보다 큰 파일은 windowSize 단위로 나누어 mapping 한다. (한 줄은 windowSize보다 작아야 한다.)
+ *
+ * startOffset/endOffset을 설정하면 그 byte 범위에서 시작하는 줄만 읽는다. endOffset에 걸친 줄은 줄 끝까지 읽고, startOffset은 줄의 시작이어야 한다.
+ * (CsvByteRangePartitioner가 줄 경계에 맞춰 나눈 범위, linesToSkip은 파일의 처음부터 읽을 때만 적용)
+ *
+ * 재시작: FlatFileItemReader는 읽은 건수만큼 다시 줄을 읽어서 건너뛰지만, 이 Reader는 commit된 chunk까지 읽은 byte 위치를 ExecutionContext에 저장하고
+ * open()에서 그 위치부터 mapping 하기 때문에 파일 크기와 관계없이 바로 이어서 읽는다.
+ * FlatFileItemReader와 같이 thread-safe 하지 않다. (multi-thread step에서는 SynchronizedItemStreamReader로 감싼다.)
+ * resource.isFile()이 true인 resource만 읽을 수 있다. (jar로 실행하는 경우의 ClassPathResource는 FlatFileItemReader를 사용한다.)
+ */
+public class MappedCsvItemReader<T> extends AbstractItemStreamItemReader<T> implements InitializingBean {
+
+    public static final long DEFAULT_WINDOW_SIZE = 256L << 20;
+
+    private static final String OFFSET_KEY = "offset";
+    private static final String READ_COUNT_KEY = "read.count";
+
+    private final CsvRecordMapper<T> mapper;
+
+    private Resource resource;
+    private int linesToSkip;
+    private long windowSize = DEFAULT_WINDOW_SIZE;
+    private long startOffset;
+    private long endOffset = Long.MAX_VALUE;
+    private boolean saveState = true;
+
+    private FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long fileSize;
+    private long rangeEnd; // 이 위치부터 시작하는 줄은 읽지 않는다. (min(fileSize, endOffset))
+
+    private final CsvRecord record = new CsvRecord();
+    private long offset; // 다음에 읽을 줄의 시작 위치
+    private long readCount;
+
+    public MappedCsvItemReader(CsvRecordMapper<T> mapper) {
+        this.mapper = mapper;
+    }
+
+    public void setResource(Resource resource) {
+        this.resource = resource;
+    }
+
+    public void setLinesToSkip(int linesToSkip) {
+        this.linesToSkip = linesToSkip;
+    }
+
+    public void setWindowSize(long windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public void setStartOffset(long startOffset) {
+        this.startOffset = startOffset;
+    }
+
+    public void setEndOffset(long endOffset) {
+        this.endOffset = endOffset;
+    }
+
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+
+        Assert.notNull(mapper, "CsvRecordMapper는 필수입니다.");
+        Assert.notNull(resource, "Resource는 필수입니다.");
+        Assert.isTrue(linesToSkip >= 0, "linesToSkip은 0 이상이어야 합니다.");
+        Assert.isTrue(startOffset >= 0 && startOffset <= endOffset, "startOffset은 0 이상, endOffset 이하여야 합니다.");
+        Assert.isTrue(windowSize >= 1_024 && windowSize <= Integer.MAX_VALUE, "windowSize는 1KB ~ 2GB 사이여야 합니다.");
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+
+        super.open(executionContext);
+
+        // mapping 하기 때문에 파일 시스템의 파일이어야 한다. (jar 안의 resource는 resource.isFile()로 확인하고 FlatFileItemReader로 읽는다.)
+        if (!resource.isFile()) throw new ItemStreamException("memory-map 할 수 없는 resource입니다: " + resource);
+
+        try {
+            channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ);
+            fileSize = channel.size();
+            rangeEnd = Math.min(fileSize, endOffset); // endOffset 전에 시작한 줄은 endOffset을 넘어도 줄 끝까지 읽는다.
+            window = null;
+
+            String offsetKey = this.getExecutionContextKey(OFFSET_KEY);
+
+            if (saveState && executionContext.containsKey(offsetKey)) { // 재시작: 마지막으로 commit된 chunk 다음 줄부터 읽는다.
+                offset = executionContext.getLong(offsetKey);
+                readCount = executionContext.getLong(this.getExecutionContextKey(READ_COUNT_KEY), 0);
+
+                if (offset > fileSize) throw new ItemStreamException("재시작 위치(" + offset + ")가 파일 크기(" + fileSize + ")보다 큽니다: " + resource);
+
+                return;
+            }
+
+            readCount = 0;
+
+            if (startOffset > 0) {
+                if (startOffset < fileSize && !this.isLineStart(startOffset)) throw new ItemStreamException("startOffset(" + startOffset + ")이 줄의 시작이 아닙니다: " + resource);
+
+                offset = startOffset;
+                return;
+            }
+
+            offset = this.skipBom();
+
+            for (int i = 0; i < linesToSkip && this.nextRecord(); i++) {
+            }
+        } catch (IOException e) {
+            throw new ItemStreamException("파일을 열 수 없습니다: " + resource, e);
+        }
+    }
+
+    @Override
+    public T read() throws Exception {
+
+        if (Objects.isNull(channel)) throw new ItemStreamException("open()이 호출되지 않았습니다.");
+
+        long lineStart = offset;
+
+        if (!this.nextRecord()) return null;
+
+        try {
+            T item = mapper.map(record);
+            readCount++;
+
+            return item;
+        } catch (RuntimeException e) {
+            throw new ParseException("byte " + lineStart + " 위치의 줄을 변환할 수 없습니다: " + resource, e);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+
+        super.update(executionContext);
+
+        if (!saveState) return;
+
+        executionContext.putLong(this.getExecutionContextKey(OFFSET_KEY), offset);
+        executionContext.putLong(this.getExecutionContextKey(READ_COUNT_KEY), readCount);
+    }
+
+    @Override
+    public void close() {
+
+        super.close();
+
+        window = null; // mapping은 GC 될 때 해제된다.
+
+        if (Objects.isNull(channel)) return;
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new ItemStreamException("파일을 닫을 수 없습니다: " + resource, e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    /**
+     * offset부터 한 줄을 읽어 record에 필드 위치를 기록하고 offset을 다음 줄로 옮긴다. (파일 끝이면 false)
+     */
+    private boolean nextRecord() throws IOException {
+
+        while (offset < rangeEnd) {
+
+            this.ensureMapped(offset);
+
+            int limit = window.limit();
+            int position = (int) (offset - windowStart);
+            int fieldStart = position;
+            boolean inQuotes = false;
+            boolean quoted = false;
+            int end = -1;
+
+            record.reset(window);
+
+            for (int i = position; i < limit; i++) {
+
+                byte b = window.get(i);
+
+                if (b == '"') {
+                    if (i == fieldStart) quoted = true;
+                    if (quoted) inQuotes = !inQuotes; // "" 는 두 번 뒤집혀서 따옴표 안에 머문다.
+                } else if (!inQuotes && b == ',') {
+                    record.addField(fieldStart, i, quoted);
+                    fieldStart = i + 1;
+                    quoted = false;
+                } else if (!inQuotes && b == '\n') {
+                    end = i;
+                    break;
+                }
+            }
+
+            if (end < 0) {
+
+                if (windowStart + limit < fileSize) { // 줄이 window 경계에 걸친 경우 줄의 시작부터 다시 mapping 한다.
+                    if (position == 0) throw new ParseException("한 줄이 windowSize(" + windowSize + " byte)보다 큽니다: byte " + offset);
+
+                    window = null;
+                    continue;
+                }
+
+                end = limit; // 마지막 줄바꿈이 없는 파일의 마지막 줄
+            }
+
+            int lineEnd = end > position && window.get(end - 1) == '\r' ? end - 1 : end;
+            offset = windowStart + Math.min(end + 1, limit);
+
+            if (lineEnd == position) continue; // 빈 줄
+
+            record.addField(fieldStart, Math.max(fieldStart, lineEnd), quoted);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    private void ensureMapped(long position) throws IOException {
+
+        if (Objects.nonNull(window) && position >= windowStart && position < windowStart + window.limit()) return;
+
+        windowStart = position;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowSize, fileSize - windowStart));
+    }
+
+    private boolean isLineStart(long position) throws IOException {
+
+        this.ensureMapped(position - 1);
+
+        return window.get((int) (position - 1 - windowStart)) == '\n';
+    }
+
+    private long skipBom() throws IOException {
+
+        if (fileSize < 3) return 0;
+
+        this.ensureMapped(0);
+
+        return window.get(0) == (byte) 0xEF && window.get(1) == (byte) 0xBB && window.get(2) == (byte) 0xBF ? 3 : 0;
+    }
+}
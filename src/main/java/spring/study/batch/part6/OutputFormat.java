@@ -0,0 +1,38 @@
+package spring.study.batch.part6;
+
+import io.micrometer.core.instrument.util.StringUtils;
+
+/**
+ * 통계/export 파일 형식 (outputFormat JobParameter)
+ */
+public enum OutputFormat {
+    CSV("csv"), // FlatFileItemWriter (기본값)
+    CSV_GZIP("csv.gz"), // chunk마다 gzip member를 이어 붙인 CSV (gzip -d, zcat으로 한 번에 풀린다.)
+    NDJSON("ndjson"), // 한 줄에 하나의 JSON 객체
+    BINARY("bin"); // [길이(int)][필드...] 형식의 length-prefixed record (ChannelItemWriter 참고)
+
+    private final String extension;
+
+    OutputFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public static OutputFormat of(String value) {
+
+        if (StringUtils.isEmpty(value)) return CSV;
+
+        return OutputFormat.valueOf(value.trim().toUpperCase());
+    }
+
+    /**
+     * "2020년_11월_일별_주문_금액.csv" → "2020년_11월_일별_주문_금액.ndjson"
+     */
+    public String fileName(String csvFileName) {
+
+        return csvFileName.substring(0, csvFileName.lastIndexOf('.') + 1) + extension;
+    }
+
+    public boolean isText() {
+        return this != BINARY;
+    }
+}
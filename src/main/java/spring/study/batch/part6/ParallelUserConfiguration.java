@@ -13,37 +13,37 @@ import org.springframework.batch.core.job.flow.Flow;
 import org.springframework.batch.core.job.flow.support.SimpleFlow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
 import org.springframework.batch.core.step.tasklet.TaskletStep;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
 import org.springframework.batch.item.database.Order;
 import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
-import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.task.TaskExecutor;
+import spring.study.batch.part4.JdbcLevelUpItemWriter;
+import spring.study.batch.part4.LevelRule;
+import spring.study.batch.part4.LevelUpDecision;
 import spring.study.batch.part4.LevelUpJobExecutionListener;
 import spring.study.batch.part4.SaveUserTasklet;
 import spring.study.batch.part4.User;
+import spring.study.batch.part4.UserKeysetItemReader;
 import spring.study.batch.part4.UserRepository;
+import spring.study.batch.part5.DailyOrderRollupItemReader;
 import spring.study.batch.part5.JobParametersDecide;
 import spring.study.batch.part5.OrderStatistics;
+import spring.study.batch.part5.OrderStatisticsStreamItemReader;
+import spring.study.batch.part5.StatisticsMode;
 
 import javax.persistence.EntityManagerFactory;
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -54,12 +54,14 @@ public class ParallelUserConfiguration {
     
     private final String JOB_NAME = "parallelUserJob";
     private final int CHUNK = 1_000;
+    private final int ROWS_PER_PARTITION = 5_000; // GridSizePolicy의 partition 당 목표 회원 수
     
     private final JobBuilderFactory jobBuilderFactory;
     private final StepBuilderFactory stepBuilderFactory;
     private final UserRepository userRepository;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
+    private final LevelRule levelRule; // levelRules JobParameter로 결정되는 등급 기준 (StepScope)
     private final TaskExecutor taskExecutor;
     
     @Bean(JOB_NAME)
@@ -67,28 +69,40 @@ public class ParallelUserConfiguration {
         
         return jobBuilderFactory.get(JOB_NAME)
             .incrementer(new RunIdIncrementer())
-            .listener(new LevelUpJobExecutionListener(userRepository))
+            .listener(new LevelUpJobExecutionListener())
             .start(this.saveUserFlow())
-            .next(this.splitFlow(null))
+            .next(this.splitFlow(null, null, null))
             .build()
             .build();
     }
     
+    @Bean(JOB_NAME + "_queryPlanGuardStep")
+    @JobScope
+    public Step queryPlanGuardStep(@Value("#{jobParameters[queryPlanGuard]}") String queryPlanGuard) {
+
+        return QueryPlanGuardTasklet.step(stepBuilderFactory, JOB_NAME + "_queryPlanGuardStep", dataSource, queryPlanGuard, ReaderQueryChecks.userJob());
+    }
+        
     @Bean(JOB_NAME + "_saveUserFlow")
     public Flow saveUserFlow() {
     
         TaskletStep saveUserStep = stepBuilderFactory.get(JOB_NAME + "_saveUseStep")
-            .tasklet(new SaveUserTasklet(userRepository))
+            .tasklet(new SaveUserTasklet(dataSource))
             .build();
     
         return new FlowBuilder<SimpleFlow>(JOB_NAME + "_saveUserFlow")
-            .start(saveUserStep)
+            .start(this.queryPlanGuardStep(null))
+            .next(saveUserStep)
             .build();
     }
     
     @Bean(JOB_NAME + "_splitFlow")
     @JobScope
-    public Flow splitFlow(@Value("#{jobParameters[date]}") String date) throws Exception {
+    public Flow splitFlow(
+        @Value("#{jobParameters[date]}") String date,
+        @Value("#{jobParameters[statisticsMode]}") String statisticsMode,
+        @Value("#{jobParameters[outputFormat]}") String outputFormat
+    ) throws Exception {
     
         Flow userLevelUpFlow = new FlowBuilder<SimpleFlow>(JOB_NAME + "_userLevelUpFlow")
             .start(this.userLevelUpManagerStep())
@@ -96,30 +110,30 @@ public class ParallelUserConfiguration {
     
         return new FlowBuilder<SimpleFlow>(JOB_NAME + "_splitFlow")
             .split(taskExecutor)
-            .add(userLevelUpFlow, this.orderStatisticsFlow(date))
+            .add(userLevelUpFlow, this.orderStatisticsFlow(date, statisticsMode, outputFormat))
             .build();
     }
     
-    private Flow orderStatisticsFlow(String date) throws Exception {
+    private Flow orderStatisticsFlow(String date, String statisticsMode, String outputFormat) throws Exception {
     
         return new FlowBuilder<SimpleFlow>(JOB_NAME + "_orderStatisticsFlow")
             .start(new JobParametersDecide("date")) // JobParameters로 date값에 따라 status가 결정됨
             .on(JobParametersDecide.CONTINUE.getName()) // status값이 CONTINUE인 경우에만 to() 메서드가 작동됨
-            .to(this.orderStatisticsStep(date))
+            .to(this.orderStatisticsStep(date, statisticsMode, outputFormat))
             .build();
     }
     
-    private Step orderStatisticsStep(String date) throws Exception {
+    private Step orderStatisticsStep(String date, String statisticsMode, String outputFormat) throws Exception {
     
         return stepBuilderFactory.get(JOB_NAME + "_orderStatisticsStep")
             .<OrderStatistics, OrderStatistics>chunk(CHUNK)
-            .reader(this.orderStatisticsItemReader(date))
-            .writer(this.orderStatisticsItemWriter(date))
+            .reader(this.orderStatisticsItemReader(date, statisticsMode))
+            .writer(this.orderStatisticsItemWriter(date, outputFormat))
             .build();
             
     }
     
-    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date) throws Exception {
+    private ItemWriter<? super OrderStatistics> orderStatisticsItemWriter(String date, String outputFormat) throws Exception {
     
         YearMonth yearMonth = YearMonth.parse(date);
     
@@ -128,29 +142,52 @@ public class ParallelUserConfiguration {
             yearMonth.getMonthValue()
         );
     
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] { "amount", "date" });
-    
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(","); // csv 파일이기 때문에 콤마(,)를 기준으로 설정
-        lineAggregator.setFieldExtractor(fieldExtractor);
-    
-        FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
-            .name(JOB_NAME + "_orderStatisticsItemWriter")
-            .resource(new FileSystemResource("output/" + fileName))
-            .encoding("UTF-8")
-            .lineAggregator(lineAggregator)
-            .headerCallback(writer -> writer.write("total_amount,date"))
-            .build();
+        OutputFormat format = OutputFormat.of(outputFormat);
+    
+        if (format != OutputFormat.CSV) {
+            // 대용량 export: direct ByteBuffer에 기록하고 FileChannel로 저장한다. (csv_gzip, ndjson, binary)
+            ChannelItemWriter<OrderStatistics> itemWriter = new ChannelItemWriter<>(RecordBinders.ORDER_STATISTICS, new String[] { "amount", "date" }, format);
+            itemWriter.setName(JOB_NAME + "_orderStatisticsItemWriter");
+            itemWriter.setResource(new FileSystemResource("output/" + format.fileName(fileName)));
+            itemWriter.setHeader("total_amount,date");
+            itemWriter.afterPropertiesSet();
+    
+            return itemWriter;
+        }
+    
+        // amount, date 순서로 StringBuilder에 바로 기록한다. (BeanWrapperFieldExtractor의 reflection 없이, csv 파일이기 때문에 콤마(,)를 기준으로 설정)
+        BinderFlatFileItemWriter<OrderStatistics> itemWriter = new BinderFlatFileItemWriter<>(RecordBinders.ORDER_STATISTICS, ",");
+        itemWriter.setName(JOB_NAME + "_orderStatisticsItemWriter");
+        itemWriter.setResource(new FileSystemResource("output/" + fileName));
+        itemWriter.setEncoding("UTF-8");
+        itemWriter.setHeaderCallback(writer -> writer.write("total_amount,date"));
         itemWriter.afterPropertiesSet();
     
         return itemWriter;
     }
     
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
+    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date, String statisticsMode) throws Exception {
     
         YearMonth yearMonth = YearMonth.parse(date);
     
+        StatisticsMode mode = StatisticsMode.of(statisticsMode);
+    
+        if (mode == StatisticsMode.ROLLUP) {
+            // orders를 집계하지 않고 daily_order_rollup에서 최대 31행만 읽는다.
+            DailyOrderRollupItemReader itemReader = new DailyOrderRollupItemReader(dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth());
+            itemReader.setName(JOB_NAME + "_dailyOrderRollupItemReader");
+    
+            return itemReader;
+        }
+    
+        if (mode == StatisticsMode.STREAM) {
+            // 한 달의 주문을 cursor로 한 번만 읽으면서 일별로 합산한다. (page마다 GROUP BY를 다시 실행하지 않는다.)
+            OrderStatisticsStreamItemReader itemReader = new OrderStatisticsStreamItemReader(dataSource, yearMonth.atDay(1), yearMonth.atEndOfMonth());
+            itemReader.setName(JOB_NAME + "_orderStatisticsStreamItemReader");
+    
+            return itemReader;
+        }
+    
         Map<String, Object> parameters = new HashMap<>();
         parameters.put("startDate", yearMonth.atDay(1));
         parameters.put("endDate", yearMonth.atEndOfMonth());
@@ -163,8 +200,8 @@ public class ParallelUserConfiguration {
             .dataSource(dataSource)
             .rowMapper((rs, rowNum) ->
                 OrderStatistics.builder()
-                    .amount(rs.getString(1))
-                    .date(LocalDate.parse(rs.getString(2), DateTimeFormatter.ISO_DATE))
+                    .amount(rs.getLong(1))
+                    .date(rs.getDate(2).toLocalDate())
                     .build()
             )
             .pageSize(CHUNK) // chunk size와 동일하게 설정
@@ -184,72 +221,64 @@ public class ParallelUserConfiguration {
     public Step userLevelUpStep() throws Exception {
     
         return stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep")
-            .<User, User>chunk(CHUNK)
+            .<User, LevelUpDecision>chunk(CHUNK)
             .reader(this.itemReader(null, null))
             .processor(this.itemProcessor())
             .writer(this.itemWriter())
+            .listener(new PartitionWeightListener()) // partition의 예상 weight와 실제 실행 시간을 기록
             .build();
     }
     
-    private ItemWriter<? super User> itemWriter() {
+    private ItemWriter<? super LevelUpDecision> itemWriter() {
         
-        return users -> users.forEach(user -> {
-            user.levelUp();
-            userRepository.save(user);
-        });
+        return new JdbcLevelUpItemWriter(dataSource); // processor가 계산한 결과를 chunk 단위로 하나의 JDBC batch UPDATE로 저장한다.
     }
     
-    private ItemProcessor<? super User,? extends User> itemProcessor() {
+    private ItemProcessor<? super User, ? extends LevelUpDecision> itemProcessor() {
     
-        return user -> {
-            // 등급 상향 대상 유저의 경우
-            if (user.availableLevelUp()) return user;
-        
-            return null;
-        };
+        return user -> LevelUpDecision.of(user, levelRule); // 등급 상향 대상이 아니면 null을 반환하여 writer로 전달하지 않는다.
     }
     
     @Bean(JOB_NAME + "_userLevelUpStep.manager")
     public Step userLevelUpManagerStep() throws Exception {
         
         return stepBuilderFactory.get(JOB_NAME + "_userLevelUpStep.manager")
-            .partitioner(JOB_NAME + "_userLevelUpStep", new UserLevelUpPartitioner(userRepository))
+            .partitioner(JOB_NAME + "_userLevelUpStep", this.userLevelUpPartitioner(null))
             .step(this.userLevelUpStep())
             .partitionHandler(this.taskExecutorPartitionHandler())
             .build();
     }
     
+    @Bean(JOB_NAME + "_userLevelUpPartitioner")
+    @StepScope
+    public Partitioner userLevelUpPartitioner(@Value("#{jobParameters[partitionMode]}") String partitionMode) {
+    
+        return new UserLevelUpPartitioner(userRepository, dataSource, PartitionMode.of(partitionMode)); // id 간격, 회원 수 또는 주문 수 기준으로 id 범위를 나눈다.
+    }
+    
     @Bean(JOB_NAME + "_taskExecutorPartitionHandler")
     public PartitionHandler taskExecutorPartitionHandler() throws Exception {
         
-        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
+        // 회원 수, CPU 수, TaskExecutor/DataSource pool 크기로 gridSize를 정한다. (gridSize JobParameter로 지정 가능)
+        GridSizePolicy gridSizePolicy = GridSizePolicy.of(ROWS_PER_PARTITION, taskExecutor, dataSource);
+        
+        TaskExecutorPartitionHandler handler = new GridSizePolicyPartitionHandler(gridSizePolicy, stepExecution -> userRepository.count());
         handler.setStep(this.userLevelUpStep());
         handler.setTaskExecutor(taskExecutor);
-        handler.setGridSize(8);
         
         return handler;
     }
     
     @Bean(JOB_NAME + "_userItemReader") // StepScope를 사용하기 위해 Bean으로 등록돼야 한다.
     @StepScope // ItemReader에서 ExecutionContext를 사용하기 위해 StepScope가 필요하다.
-    public JpaPagingItemReader<? extends User> itemReader(
+    public UserKeysetItemReader itemReader(
         @Value("#{stepExecutionContext[minId]}") Long minId,
         @Value("#{stepExecutionContext[maxId]}") Long maxId
-    ) throws Exception {
-        
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("minId", minId);
-        parameters.put("maxId", maxId);
-        
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-            .queryString("SELECT u FROM users u WHERE u.id BETWEEN :minId AND :maxId")
-            .parameterValues(parameters)
-            .entityManagerFactory(entityManagerFactory)
-            .pageSize(CHUNK) // pageSize는 보통 chunk size와 동일하게 설정한다.
-            .name(JOB_NAME + "_userItemReader")
-            .build();
-        itemReader.afterPropertiesSet();
-        
+    ) {
+    
+        UserKeysetItemReader itemReader = new UserKeysetItemReader(entityManagerFactory, CHUNK, minId, maxId); // partition의 id 범위 안에서 마지막 id 기준으로 page를 조회한다.
+        itemReader.setName(JOB_NAME + "_userItemReader");
+    
         return itemReader;
     }
 }
@@ -0,0 +1,19 @@
+package spring.study.batch.part6;
+
+import io.micrometer.core.instrument.util.StringUtils;
+
+/**
+ * UserLevelUpPartitioner가 회원 id 범위를 나누는 기준 (partitionMode JobParameter)
+ */
+public enum PartitionMode {
+    ID_RANGE, // min ~ max id를 같은 간격으로 나누는 기본 방식 (id가 듬성듬성하면 partition마다 회원 수가 달라진다.)
+    USER_COUNT, // NTILE로 회원 수가 같도록 나누는 방식
+    ORDER_COUNT; // 회원 별 (1 + 주문 수)의 누적 합계가 같도록 나누는 방식 (주문이 많은 회원이 몰린 범위를 작게 나눈다.)
+
+    public static PartitionMode of(String value) {
+
+        if (StringUtils.isEmpty(value)) return ID_RANGE; // JobParameters에 partitionMode가 없으면 기존 방식으로 동작
+
+        return PartitionMode.valueOf(value.trim().toUpperCase());
+    }
+}
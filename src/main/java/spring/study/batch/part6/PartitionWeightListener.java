@@ -0,0 +1,43 @@
+package spring.study.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.Objects;
+
+/**
+ * partition Step이 끝나면 UserLevelUpPartitioner가 예상한 weight와 실제 실행 시간, 읽은 건수를 StepExecutionContext에 기록한다.
+ * partition 별 weight 당 실행 시간(ELAPSED_PER_WEIGHT_KEY)이 비슷할수록 partitionMode의 예상이 실제 작업량과 맞는다.
+ */
+@Slf4j
+public class PartitionWeightListener implements StepExecutionListener {
+
+    public static final String ELAPSED_MILLIS_KEY = "partition.elapsedMillis";
+    public static final String ELAPSED_PER_WEIGHT_KEY = "partition.elapsedMicrosPerWeight";
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+    }
+
+    @Override
+    public ExitStatus afterStep(StepExecution stepExecution) {
+
+        ExecutionContext executionContext = stepExecution.getExecutionContext();
+
+        if (!executionContext.containsKey(UserLevelUpPartitioner.ESTIMATED_WEIGHT_KEY) || Objects.isNull(stepExecution.getStartTime())) return null;
+
+        long weight = executionContext.getLong(UserLevelUpPartitioner.ESTIMATED_WEIGHT_KEY);
+        long elapsedMillis = System.currentTimeMillis() - stepExecution.getStartTime().getTime(); // afterStep() 시점에는 endTime이 없다.
+
+        executionContext.putLong(ELAPSED_MILLIS_KEY, elapsedMillis);
+        executionContext.putLong(ELAPSED_PER_WEIGHT_KEY, weight == 0 ? 0 : elapsedMillis * 1_000 / weight);
+
+        log.info("{}: 예상 weight {}, 읽은 건수 {}, 실행 시간 {}ms",
+            stepExecution.getStepName(), weight, stepExecution.getReadCount(), elapsedMillis);
+
+        return null;
+    }
+}
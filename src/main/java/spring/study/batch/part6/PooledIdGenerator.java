@@ -0,0 +1,48 @@
+package spring.study.batch.part6;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.PersistentIdentifierGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+import java.io.Serializable;
+import java.util.Properties;
+
+/**
+ * IdBlockAllocator로 id를 할당하는 Hibernate IdentifierGenerator
+ * IDENTITY 전략 대신 사용하면 Hibernate가 INSERT를 hibernate.jdbc.batch_size 단위로 batch 처리할 수 있다.
+ *
+ * <pre>
+ * &#64;GeneratedValue(generator = "pooled")
+ * &#64;GenericGenerator(name = "pooled", strategy = PooledIdGenerator.STRATEGY,
+ *     parameters = &#64;Parameter(name = PooledIdGenerator.BLOCK_SIZE, value = "1000"))
+ * </pre>
+ */
+public class PooledIdGenerator implements IdentifierGenerator {
+
+    public static final String STRATEGY = "spring.study.batch.part6.PooledIdGenerator";
+    public static final String BLOCK_SIZE = "block_size";
+
+    private String name;
+    private IdBlockAllocator allocator;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+
+        this.name = params.getProperty(PersistentIdentifierGenerator.TABLE); // Entity의 테이블 이름을 id_block의 name으로 사용한다.
+        this.allocator = new IdBlockAllocator(
+            IdBlockAllocator.ConnectionSource.of(serviceRegistry.getService(ConnectionProvider.class)),
+            ConfigurationHelper.getInt(BLOCK_SIZE, params, IdBlockAllocator.DEFAULT_BLOCK_SIZE)
+        );
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+
+        return allocator.nextId(name);
+    }
+}
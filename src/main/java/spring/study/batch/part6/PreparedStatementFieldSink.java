@@ -0,0 +1,86 @@
+package spring.study.batch.part6;
+
+import org.springframework.jdbc.UncategorizedSQLException;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.Objects;
+
+/**
+ * 필드를 PreparedStatement의 parameter로 1번부터 순서대로 설정한다. (setLong/setInt를 사용하기 때문에 boxing이 없다.)
+ */
+public class PreparedStatementFieldSink implements FieldSink {
+
+    private PreparedStatement ps;
+    private int index;
+
+    /**
+     * ps의 parameterIndex 번째부터 설정하기 시작한다.
+     */
+    public PreparedStatementFieldSink startAt(PreparedStatement ps, int parameterIndex) {
+
+        this.ps = ps;
+        this.index = parameterIndex;
+
+        return this;
+    }
+
+    @Override
+    public void putString(String value) {
+
+        try {
+            ps.setString(index++, value);
+        } catch (SQLException e) {
+            throw this.translate(e);
+        }
+    }
+
+    @Override
+    public void putLong(long value) {
+
+        try {
+            ps.setLong(index++, value);
+        } catch (SQLException e) {
+            throw this.translate(e);
+        }
+    }
+
+    @Override
+    public void putInt(int value) {
+
+        try {
+            ps.setInt(index++, value);
+        } catch (SQLException e) {
+            throw this.translate(e);
+        }
+    }
+
+    @Override
+    public void putDouble(double value) {
+
+        try {
+            ps.setDouble(index++, value);
+        } catch (SQLException e) {
+            throw this.translate(e);
+        }
+    }
+
+    @Override
+    public void putDate(LocalDate value) {
+
+        try {
+            if (Objects.isNull(value)) ps.setNull(index++, Types.DATE);
+            else ps.setDate(index++, Date.valueOf(value));
+        } catch (SQLException e) {
+            throw this.translate(e);
+        }
+    }
+
+    private UncategorizedSQLException translate(SQLException e) {
+
+        return new UncategorizedSQLException("parameter " + (index - 1) + " 설정", null, e);
+    }
+}
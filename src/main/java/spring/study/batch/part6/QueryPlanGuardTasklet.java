@@ -0,0 +1,170 @@
+package spring.study.batch.part6;
+
+import io.micrometer.core.instrument.util.StringUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.DatabaseType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.MetaDataAccessException;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 오래 걸리는 Job의 첫 Step에서 reader 쿼리의 실행 계획(EXPLAIN)을 확인한다.
+ * index가 없어 table 전체를 읽는(full scan) 쿼리가 있으면 mode에 따라 경고만 남기거나(WARN) Job을 바로 실패시킨다(FAIL).
+ *
+ * - H2: 실행 계획에 "PUBLIC.ORDERS.tableScan"이 있으면 full scan
+ * - MySQL: type=ALL이면서 possible_keys가 없으면 full scan (possible_keys가 있으면 데이터가 적어 optimizer가 고른 것이므로 경고만 남긴다.)
+ */
+@Slf4j
+public class QueryPlanGuardTasklet implements Tasklet {
+
+    public static final String VIOLATIONS_KEY = "queryPlan.violations";
+
+    private static final Pattern H2_TABLE_SCAN = Pattern.compile("/\\* ([\\w.]+)\\.tableScan");
+
+    public enum Mode {
+        OFF,
+        WARN,
+        FAIL;
+
+        public static Mode of(String value) {
+
+            if (StringUtils.isEmpty(value)) return WARN;
+
+            return Mode.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    /**
+     * 확인할 reader 쿼리 (parameter는 실행 계획에 영향이 없는 임의의 값)
+     */
+    public static class Check {
+
+        private final String name;
+        private final String sql;
+        private final Object[] args;
+
+        private Check(String name, String sql, Object[] args) {
+            this.name = name;
+            this.sql = sql;
+            this.args = args;
+        }
+
+        public static Check of(String name, String sql, Object... args) {
+
+            return new Check(name, sql, args);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final Mode mode;
+    private final List<Check> checks;
+
+    public QueryPlanGuardTasklet(DataSource dataSource, Mode mode, List<Check> checks) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.mode = mode;
+        this.checks = checks;
+    }
+
+    /**
+     * 오래 걸리는 Step을 실행하기 전에 reader 쿼리의 실행 계획을 확인하는 Step (queryPlanGuard: OFF, WARN(기본값), FAIL)
+     */
+    public static Step step(StepBuilderFactory stepBuilderFactory, String name, DataSource dataSource, String queryPlanGuard, List<Check> checks) {
+
+        return stepBuilderFactory.get(name)
+            .tasklet(new QueryPlanGuardTasklet(dataSource, Mode.of(queryPlanGuard), checks))
+            .build();
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+
+        if (mode == Mode.OFF) return RepeatStatus.FINISHED;
+
+        DatabaseType databaseType = this.databaseType();
+        List<String> violations = new ArrayList<>();
+
+        for (Check check : checks) {
+
+            List<String> scans = databaseType == DatabaseType.MYSQL ? this.explainMySql(check) : this.explainH2(check);
+
+            for (String scan : scans) {
+                violations.add(check.name + ": " + scan);
+            }
+
+            contribution.incrementReadCount();
+        }
+
+        contribution.getStepExecution().getExecutionContext().putInt(VIOLATIONS_KEY, violations.size());
+
+        if (violations.isEmpty()) {
+            log.info("reader 쿼리 {}개의 실행 계획 확인 완료", checks.size());
+            return RepeatStatus.FINISHED;
+        }
+
+        violations.forEach(violation -> log.warn("full scan: {}", violation));
+
+        if (mode == Mode.FAIL) {
+            throw new IllegalStateException("index를 사용하지 않는 reader 쿼리가 있습니다. (queryPlanGuard=WARN으로 무시할 수 있습니다.) " + violations);
+        }
+
+        return RepeatStatus.FINISHED;
+    }
+
+    private List<String> explainH2(Check check) {
+
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + check.sql, String.class, check.args);
+
+        log.debug("{} 실행 계획\n{}", check.name, plan);
+
+        if (Objects.isNull(plan)) return Collections.emptyList();
+
+        List<String> scans = new ArrayList<>();
+        Matcher matcher = H2_TABLE_SCAN.matcher(plan);
+
+        while (matcher.find()) {
+            scans.add(matcher.group(1) + " tableScan");
+        }
+
+        return scans;
+    }
+
+    private List<String> explainMySql(Check check) {
+
+        List<String> scans = new ArrayList<>();
+
+        jdbcTemplate.query("EXPLAIN " + check.sql, rs -> {
+
+            String table = rs.getString("table");
+            String type = rs.getString("type");
+            String possibleKeys = rs.getString("possible_keys");
+
+            log.debug("{} 실행 계획: table={}, type={}, possible_keys={}, key={}, rows={}",
+                check.name, table, type, possibleKeys, rs.getString("key"), rs.getString("rows"));
+
+            if (!"ALL".equals(type)) return;
+
+            if (StringUtils.isEmpty(possibleKeys)) scans.add(table + " type=ALL (사용할 수 있는 index 없음)");
+            else log.warn("{}: {} type=ALL (index {}가 있지만 사용하지 않음, 데이터가 적은 경우 정상)", check.name, table, possibleKeys);
+        }, check.args);
+
+        return scans;
+    }
+
+    private DatabaseType databaseType() throws MetaDataAccessException {
+
+        return DatabaseType.fromMetaData(Objects.requireNonNull(jdbcTemplate.getDataSource()));
+    }
+}
@@ -0,0 +1,45 @@
+package spring.study.batch.part6;
+
+import java.sql.Date;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * QueryPlanGuardTasklet으로 확인하는 reader 쿼리 (JPQL reader는 같은 조건의 SQL로 확인한다.)
+ */
+public final class ReaderQueryChecks {
+
+    // UserKeysetItemReader, partition의 회원 id 범위 조회 → users PK
+    public static final QueryPlanGuardTasklet.Check USERS_BY_ID_RANGE = QueryPlanGuardTasklet.Check.of(
+        "userItemReader",
+        "SELECT id, level, total_amount FROM users WHERE id > ? AND id <= ? ORDER BY id",
+        0L, 1_000L
+    );
+
+    // orderStatisticsItemReader (PAGING/STREAM), orderStatisticsRangeJob → idx_orders_created_date
+    public static final QueryPlanGuardTasklet.Check ORDERS_BY_CREATED_DATE = QueryPlanGuardTasklet.Check.of(
+        "orderStatisticsItemReader",
+        "SELECT SUM(amount), created_date FROM orders WHERE created_date >= ? AND created_date <= ? GROUP BY created_date",
+        Date.valueOf("2020-11-01"), Date.valueOf("2020-11-30")
+    );
+
+    // 회원 별 주문 금액 합계 (UserTotalAmountRebuildTasklet) → idx_orders_user_id
+    public static final QueryPlanGuardTasklet.Check ORDERS_BY_USER_ID = QueryPlanGuardTasklet.Check.of(
+        "ordersByUserId",
+        "SELECT COALESCE(SUM(amount), 0) FROM orders WHERE user_id = ?",
+        1L
+    );
+
+    public static List<QueryPlanGuardTasklet.Check> userJob() {
+
+        return Arrays.asList(USERS_BY_ID_RANGE, ORDERS_BY_CREATED_DATE, ORDERS_BY_USER_ID);
+    }
+
+    public static List<QueryPlanGuardTasklet.Check> orderStatistics() {
+
+        return Arrays.asList(ORDERS_BY_CREATED_DATE);
+    }
+
+    private ReaderQueryChecks() {
+    }
+}
@@ -0,0 +1,12 @@
+package spring.study.batch.part6;
+
+/**
+ * item의 필드를 FieldSink에 순서대로 기록한다.
+ * BeanWrapperFieldExtractor/BeanPropertyItemSqlParameterSourceProvider처럼 item마다 property를 reflection으로 찾지 않고,
+ * compile 시점에 만들어진 getter 호출만 남는다. (RecordBinders 참고)
+ */
+@FunctionalInterface
+public interface RecordBinder<T> {
+
+    void bind(T item, FieldSink sink);
+}
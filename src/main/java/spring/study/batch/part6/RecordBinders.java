@@ -0,0 +1,42 @@
+package spring.study.batch.part6;
+
+import spring.study.batch.part3.Person;
+import spring.study.batch.part5.OrderStatistics;
+
+/**
+ * Writer에서 사용하는 RecordBinder 모음 (필드 순서가 CSV 컬럼/SQL parameter 순서)
+ */
+public final class RecordBinders {
+
+    // id는 저장할 때 IdBlockAllocator로 할당하는 경우가 있기 때문에 제외한다.
+    public static final RecordBinder<Person> PERSON = (person, sink) -> {
+        sink.putString(person.getName());
+        sink.putString(person.getAge());
+        sink.putString(person.getAddress());
+    };
+
+    public static final RecordBinder<Person> PERSON_WITH_ID = (person, sink) -> {
+        sink.putLong(person.getId());
+        PERSON.bind(person, sink);
+    };
+
+    public static final RecordBinder<OrderStatistics> ORDER_STATISTICS = (statistics, sink) -> {
+        sink.putLong(statistics.getAmount());
+        sink.putDate(statistics.getDate());
+    };
+
+    // ORDER_STATISTICS + 건수, 최소/최대, 평균, p50/p95/p99 (OrderStatisticsStreamItemReader의 분포 수집 결과)
+    public static final RecordBinder<OrderStatistics> ORDER_DISTRIBUTION = (statistics, sink) -> {
+        ORDER_STATISTICS.bind(statistics, sink);
+        sink.putLong(statistics.getCount());
+        sink.putLong(statistics.getMinAmount());
+        sink.putLong(statistics.getMaxAmount());
+        sink.putDouble(statistics.getMeanAmount());
+        sink.putLong(statistics.getP50());
+        sink.putLong(statistics.getP95());
+        sink.putLong(statistics.getP99());
+    };
+
+    private RecordBinders() {
+    }
+}
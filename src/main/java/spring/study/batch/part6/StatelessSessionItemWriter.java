@@ -0,0 +1,169 @@
+package spring.study.batch.part6;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.util.Assert;
+import spring.study.batch.part4.User;
+import spring.study.batch.part5.DailyOrderRollupAccumulator;
+import spring.study.batch.part5.Orders;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 영속성 컨텍스트 없이 Hibernate StatelessSession으로 Entity를 저장하는 ItemWriter
+ * JpaItemWriter/Repository.save()와 달리 1차 캐시, 변경 감지(snapshot), merge 전 SELECT가 없기 때문에 chunk가 끝나면 메모리에 남는 것이 없다.
+ *
+ * - chunk 트랜잭션의 Connection을 그대로 사용하기 때문에 chunk와 함께 commit/rollback 된다.
+ * - hibernate.jdbc.batch_size만큼 JDBC batch로 전송한다. (Entity의 id는 PooledIdGenerator로 미리 할당받기 때문에 INSERT도 batch 된다.)
+ * - StatelessSession은 action queue가 없어 hibernate.order_inserts/order_updates가 적용되지 않으므로, 같은 Entity끼리 모아서 실행하여 batch가 끊기지 않게 한다.
+ * - cascade, 연관관계 collection은 처리하지 않는다. (User의 orders는 insertUsers()를 사용하며, 저장한 주문은 daily_order_rollup에도 더한다.)
+ */
+public class StatelessSessionItemWriter<T> implements ItemWriter<T>, InitializingBean {
+
+    public static final int DEFAULT_BATCH_SIZE = 1_000;
+
+    public enum Operation {
+        INSERT,
+        UPDATE
+    }
+
+    private final SessionFactory sessionFactory;
+    private final DataSource dataSource;
+    private final Operation operation;
+
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    public StatelessSessionItemWriter(EntityManagerFactory entityManagerFactory, DataSource dataSource, Operation operation) {
+        this.sessionFactory = Objects.isNull(entityManagerFactory) ? null : entityManagerFactory.unwrap(SessionFactory.class);
+        this.dataSource = dataSource;
+        this.operation = operation;
+    }
+
+    public static <T> StatelessSessionItemWriter<T> insert(EntityManagerFactory entityManagerFactory, DataSource dataSource) {
+
+        return new StatelessSessionItemWriter<>(entityManagerFactory, dataSource, Operation.INSERT);
+    }
+
+    public static <T> StatelessSessionItemWriter<T> update(EntityManagerFactory entityManagerFactory, DataSource dataSource) {
+
+        return new StatelessSessionItemWriter<>(entityManagerFactory, dataSource, Operation.UPDATE);
+    }
+
+    /**
+     * User와 User의 orders를 함께 저장한다. (CascadeType.PERSIST 대신 orders를 직접 INSERT 하고 user_id를 JDBC batch로 연결한다.)
+     */
+    public static StatelessSessionItemWriter<User> insertUsers(EntityManagerFactory entityManagerFactory, DataSource dataSource) {
+
+        return new UserInsertItemWriter(entityManagerFactory, dataSource);
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+
+        Assert.notNull(sessionFactory, "EntityManagerFactory는 필수입니다.");
+        Assert.notNull(dataSource, "DataSource는 필수입니다.");
+        Assert.notNull(operation, "Operation은 필수입니다.");
+        Assert.isTrue(batchSize > 0, "batchSize는 0보다 커야 합니다.");
+    }
+
+    @Override
+    public void write(List<? extends T> items) throws Exception {
+
+        if (items.isEmpty()) return;
+
+        Connection connection = DataSourceUtils.getConnection(dataSource); // chunk 트랜잭션에 바인딩된 Connection
+
+        try (StatelessSession session = sessionFactory.withStatelessOptions().connection(connection).openStatelessSession()) {
+
+            session.setJdbcBatchSize(batchSize);
+
+            for (T item : this.orderByEntity(items)) {
+                if (operation == Operation.INSERT) session.insert(item);
+                else session.update(item);
+            }
+
+            this.afterWrite(session, connection, items);
+
+            ((SharedSessionContractImplementor) session).getJdbcCoordinator().executeBatch(); // close()는 남은 batch를 전송하지 않는다.
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /**
+     * Entity 저장 후 같은 session/Connection에서 추가 작업이 필요한 경우 사용한다.
+     */
+    protected void afterWrite(StatelessSession session, Connection connection, List<? extends T> items) throws Exception {
+    }
+
+    private List<? extends T> orderByEntity(List<? extends T> items) {
+
+        Class<?> type = items.get(0).getClass();
+
+        if (items.stream().allMatch(item -> item.getClass() == type)) return items;
+
+        List<T> ordered = new ArrayList<>(items);
+        ordered.sort(Comparator.comparing(item -> item.getClass().getName())); // 안정 정렬이기 때문에 같은 Entity 안에서는 순서가 유지된다.
+
+        return ordered;
+    }
+
+    private static class UserInsertItemWriter extends StatelessSessionItemWriter<User> {
+
+        private static final String JOIN_SQL = "UPDATE orders SET user_id = ? WHERE id = ?";
+
+        private UserInsertItemWriter(EntityManagerFactory entityManagerFactory, DataSource dataSource) {
+            super(entityManagerFactory, dataSource, Operation.INSERT);
+        }
+
+        @Override
+        protected void afterWrite(StatelessSession session, Connection connection, List<? extends User> users) throws Exception {
+
+            List<long[]> joins = new ArrayList<>();
+            DailyOrderRollupAccumulator rollup = new DailyOrderRollupAccumulator();
+
+            for (User user : users) {
+
+                if (Objects.isNull(user.getOrders())) continue;
+
+                for (Orders orders : user.getOrders()) {
+                    session.insert(orders);
+                    joins.add(new long[] { user.getId(), orders.getId() }); // insert() 이후에 생성된 id가 Entity에 설정된다.
+                    rollup.add(orders.getCreatedDate(), orders.getAmount());
+                }
+            }
+
+            if (joins.isEmpty()) return;
+
+            ((SharedSessionContractImplementor) session).getJdbcCoordinator().executeBatch();
+
+            try (PreparedStatement ps = connection.prepareStatement(JOIN_SQL)) {
+
+                for (long[] join : joins) {
+                    ps.setLong(1, join[0]);
+                    ps.setLong(2, join[1]);
+                    ps.addBatch();
+                }
+
+                ps.executeBatch();
+            }
+
+            rollup.flush(connection);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package spring.study.batch.part6;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * part6 Job의 성능을 측정하기 위한 부하 테스트 데이터 생성 Job (JobParameters는 SyntheticDataSpec 참고)
+ * 회원 index 범위를 partition으로 나누어 TaskExecutor에서 병렬로 저장한다. users, orders 테이블이 비어있지 않으면 첫 번째 Step에서 실패한다.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class SyntheticDataConfiguration {
+
+    private final String JOB_NAME = "userDataGeneratorJob";
+    private final int BATCH_SIZE = 1_000; // 한 트랜잭션에서 저장할 회원 수
+    private final int ROWS_PER_PARTITION = 10_000; // GridSizePolicy의 partition 당 목표 생성 회원 수
+
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final DataSource dataSource;
+    private final TaskExecutor taskExecutor;
+
+    @Bean(JOB_NAME)
+    public Job userDataGeneratorJob() throws Exception {
+
+        return jobBuilderFactory.get(JOB_NAME)
+            .incrementer(new RunIdIncrementer())
+            .start(this.emptyTableCheckStep())
+            .next(this.generateManagerStep())
+            .build();
+    }
+
+    @Bean(JOB_NAME + "_emptyTableCheckStep")
+    public Step emptyTableCheckStep() {
+
+        // 회원 id를 SyntheticDataSpec이 정하기 때문에 이미 회원/주문이 있으면 generateStep 중간에 PK 중복으로 실패한다.
+        return stepBuilderFactory.get(JOB_NAME + "_emptyTableCheckStep")
+            .tasklet(new EmptyTableCheckTasklet(dataSource, "users", "orders"))
+            .build();
+    }
+
+    @Bean(JOB_NAME + "_generateStep.manager")
+    public Step generateManagerStep() throws Exception {
+
+        return stepBuilderFactory.get(JOB_NAME + "_generateStep.manager")
+            .partitioner(JOB_NAME + "_generateStep", this.generatePartitioner(null))
+            .step(this.generateStep())
+            .partitionHandler(this.generatePartitionHandler())
+            .build();
+    }
+
+    @Bean(JOB_NAME + "_generatePartitioner")
+    @StepScope
+    public Partitioner generatePartitioner(@Value("#{jobParameters[userCount]}") String userCount) {
+
+        long total = new SyntheticDataSpec(userCount, null, null, null, null, null, null).getUserCount();
+
+        return gridSize -> {
+
+            Map<String, ExecutionContext> result = new HashMap<>();
+
+            long targetSize = (total + gridSize - 1) / gridSize;
+
+            for (int number = 0; number * targetSize < total; number++) {
+
+                ExecutionContext value = new ExecutionContext();
+                value.putLong("fromIndex", number * targetSize);
+                value.putLong("toIndex", Math.min((number + 1) * targetSize, total));
+
+                result.put("partition" + number, value);
+            }
+
+            return result;
+        };
+    }
+
+    @Bean(JOB_NAME + "_generatePartitionHandler")
+    public PartitionHandler generatePartitionHandler() throws Exception {
+
+        GridSizePolicy gridSizePolicy = GridSizePolicy.of(ROWS_PER_PARTITION, taskExecutor, dataSource);
+
+        // 생성할 회원 수(userCount JobParameter)로 gridSize를 정한다.
+        TaskExecutorPartitionHandler handler = new GridSizePolicyPartitionHandler(gridSizePolicy, stepExecution ->
+            new SyntheticDataSpec(stepExecution.getJobParameters().getString("userCount"), null, null, null, null, null, null).getUserCount()
+        );
+        handler.setStep(this.generateStep());
+        handler.setTaskExecutor(taskExecutor);
+
+        return handler;
+    }
+
+    @Bean(JOB_NAME + "_generateStep")
+    public Step generateStep() {
+
+        return stepBuilderFactory.get(JOB_NAME + "_generateStep")
+            .tasklet(this.generateTasklet(null, null, null, null, null, null, null, null, null))
+            .build();
+    }
+
+    @Bean(JOB_NAME + "_generateTasklet")
+    @StepScope // partition 별 ExecutionContext의 fromIndex, toIndex를 사용하기 위해 StepScope로 설정
+    public Tasklet generateTasklet(
+        @Value("#{stepExecutionContext[fromIndex]}") Long fromIndex,
+        @Value("#{stepExecutionContext[toIndex]}") Long toIndex,
+        @Value("#{jobParameters[userCount]}") String userCount,
+        @Value("#{jobParameters[ordersPerUser]}") String ordersPerUser,
+        @Value("#{jobParameters[amounts]}") String amounts,
+        @Value("#{jobParameters[startDate]}") String startDate,
+        @Value("#{jobParameters[endDate]}") String endDate,
+        @Value("#{jobParameters[idSparsity]}") String idSparsity,
+        @Value("#{jobParameters[seed]}") String seed
+    ) {
+
+        SyntheticDataSpec spec = new SyntheticDataSpec(userCount, ordersPerUser, amounts, startDate, endDate, idSparsity, seed);
+
+        log.info("회원 index {} ~ {} 생성 ({})", fromIndex, toIndex - 1, spec);
+
+        return new SyntheticDataTasklet(dataSource, spec, fromIndex, toIndex, BATCH_SIZE);
+    }
+}
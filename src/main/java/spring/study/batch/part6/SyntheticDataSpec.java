@@ -0,0 +1,176 @@
+package spring.study.batch.part6;
+
+import io.micrometer.core.instrument.util.StringUtils;
+import lombok.Getter;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.SplittableRandom;
+
+/**
+ * 부하 테스트용 회원/주문 데이터 생성 규칙 (userDataGeneratorJob의 JobParameters)
+ * 회원 index 별로 seed를 만들어 난수를 생성하기 때문에 partition 개수나 실행 순서와 관계없이 같은 seed는 항상 같은 데이터를 만든다.
+ *
+ * - userCount: 회원 수 (기본값 100,000)
+ * - ordersPerUser: 회원 별 주문 수 분포 (fixed:N, uniform:MIN-MAX, poisson:MEAN / 기본값 uniform:1-5)
+ * - amounts: 주문 금액 분포 (fixed:N, uniform:MIN-MAX, lognormal:MEDIAN,SIGMA / 기본값 uniform:1000-500000)
+ * - startDate, endDate: 주문 일자 범위 (기본값 2020-11-01 ~ 2020-11-30)
+ * - idSparsity: 회원 id 간격 (1이면 연속된 id, 10이면 평균 10 간격으로 비어있는 id / 기본값 1)
+ * - seed: 난수 seed (기본값 42)
+ */
+@Getter
+public class SyntheticDataSpec {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long userCount;
+    private final Distribution ordersPerUser;
+    private final Distribution amounts;
+    private final LocalDate startDate;
+    private final int days;
+    private final double idSparsity;
+    private final long seed;
+
+    public SyntheticDataSpec(String userCount, String ordersPerUser, String amounts, String startDate, String endDate, String idSparsity, String seed) {
+
+        this.userCount = Long.parseLong(defaultIfEmpty(userCount, "100000"));
+        this.ordersPerUser = Distribution.parse(defaultIfEmpty(ordersPerUser, "uniform:1-5"));
+        this.amounts = Distribution.parse(defaultIfEmpty(amounts, "uniform:1000-500000"));
+        this.startDate = LocalDate.parse(defaultIfEmpty(startDate, "2020-11-01"));
+        this.days = (int) ChronoUnit.DAYS.between(this.startDate, LocalDate.parse(defaultIfEmpty(endDate, "2020-11-30"))) + 1;
+        this.idSparsity = Double.parseDouble(defaultIfEmpty(idSparsity, "1"));
+        this.seed = Long.parseLong(defaultIfEmpty(seed, "42"));
+
+        if (this.userCount <= 0) throw new IllegalArgumentException("userCount는 0보다 커야 합니다: " + userCount);
+        if (this.days <= 0) throw new IllegalArgumentException("endDate는 startDate 이후여야 합니다: " + startDate + " ~ " + endDate);
+        if (this.idSparsity < 1) throw new IllegalArgumentException("idSparsity는 1 이상이어야 합니다: " + idSparsity);
+    }
+
+    /**
+     * index 번째 회원의 난수 생성기 (같은 seed, 같은 index는 항상 같은 값을 만든다.)
+     */
+    public SplittableRandom randomOf(long index) {
+
+        return new SplittableRandom(seed + index * GOLDEN_GAMMA);
+    }
+
+    /**
+     * index 번째 회원의 id (idSparsity 만큼 간격을 두지만 index 순서로 증가한다.)
+     */
+    public long userIdOf(long index) {
+
+        return 1 + (long) Math.floor(index * idSparsity);
+    }
+
+    public LocalDate createdDateOf(SplittableRandom random) {
+
+        return startDate.plusDays(random.nextInt(days));
+    }
+
+    private static String defaultIfEmpty(String value, String defaultValue) {
+
+        return StringUtils.isEmpty(value) ? defaultValue : value.trim();
+    }
+
+    @Override
+    public String toString() {
+
+        return String.format("userCount=%d, ordersPerUser=%s, amounts=%s, startDate=%s, days=%d, idSparsity=%s, seed=%d",
+            userCount, ordersPerUser, amounts, startDate, days, idSparsity, seed);
+    }
+
+    public static abstract class Distribution {
+
+        private final String expression;
+
+        private Distribution(String expression) {
+            this.expression = expression;
+        }
+
+        public abstract long sample(SplittableRandom random);
+
+        static Distribution parse(String expression) {
+
+            String[] tokens = expression.split(":");
+
+            if (tokens.length != 2) throw new IllegalArgumentException("분포 형식이 잘못되었습니다: " + expression);
+
+            String[] values = tokens[1].split("[-,]");
+
+            switch (tokens[0].trim().toLowerCase()) {
+                case "fixed":
+                    return fixed(expression, Long.parseLong(values[0].trim()));
+                case "uniform":
+                    return uniform(expression, Long.parseLong(values[0].trim()), Long.parseLong(values[1].trim()));
+                case "poisson":
+                    return poisson(expression, Double.parseDouble(values[0].trim()));
+                case "lognormal":
+                    return logNormal(expression, Double.parseDouble(values[0].trim()), Double.parseDouble(values[1].trim()));
+                default:
+                    throw new IllegalArgumentException("지원하지 않는 분포입니다: " + expression);
+            }
+        }
+
+        private static Distribution fixed(String expression, long value) {
+
+            return new Distribution(expression) {
+                @Override
+                public long sample(SplittableRandom random) {
+                    return value;
+                }
+            };
+        }
+
+        private static Distribution uniform(String expression, long min, long max) {
+
+            return new Distribution(expression) {
+                @Override
+                public long sample(SplittableRandom random) {
+                    return random.nextLong(min, max + 1);
+                }
+            };
+        }
+
+        private static Distribution poisson(String expression, double mean) {
+
+            double limit = Math.exp(-mean);
+
+            return new Distribution(expression) {
+                @Override
+                public long sample(SplittableRandom random) {
+
+                    long count = 0;
+                    double product = random.nextDouble();
+
+                    while (product > limit) { // 평균이 작은 경우에 충분히 빠른 Knuth 방식
+                        count++;
+                        product *= random.nextDouble();
+                    }
+
+                    return count;
+                }
+            };
+        }
+
+        private static Distribution logNormal(String expression, double median, double sigma) {
+
+            double mu = Math.log(median);
+
+            return new Distribution(expression) {
+                @Override
+                public long sample(SplittableRandom random) {
+
+                    // SplittableRandom은 nextGaussian()이 없기 때문에 Box-Muller 변환을 사용한다.
+                    double gaussian = Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+
+                    return Math.round(Math.exp(mu + sigma * gaussian));
+                }
+            };
+        }
+
+        @Override
+        public String toString() {
+            return expression;
+        }
+    }
+}
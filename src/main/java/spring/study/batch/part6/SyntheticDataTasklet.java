@@ -0,0 +1,120 @@
+package spring.study.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import spring.study.batch.part4.User;
+import spring.study.batch.part5.DailyOrderRollupAccumulator;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+
+/**
+ * partition에 할당된 회원 index 범위(fromIndex ~ toIndex - 1)의 회원과 주문을 생성하여 JDBC batch로 저장한다.
+ * 한 번의 execute() 호출이 batchSize명의 회원(= 하나의 트랜잭션)을 저장하고, 저장한 index를 StepExecutionContext에 기록한다.
+ * 회원 id는 SyntheticDataSpec이 결정하기 때문에 generated key를 조회하지 않고 orders.user_id를 채운다. (주문 id는 IdBlockAllocator로 할당)
+ * 생성한 주문은 같은 트랜잭션에서 daily_order_rollup에 더한다.
+ */
+@Slf4j
+public class SyntheticDataTasklet implements Tasklet {
+
+    private static final String NEXT_INDEX_KEY = "syntheticData.nextIndex";
+
+    private static final String INSERT_USER_SQL = "INSERT INTO users (id, username, level, total_amount, level_dirty) VALUES (?, ?, ?, ?, TRUE)";
+    private static final String INSERT_ORDER_SQL = "INSERT INTO orders (id, item_name, amount, created_date, user_id, rollup_dirty) VALUES (?, ?, ?, ?, ?, TRUE)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final IdBlockAllocator idBlockAllocator;
+    private final SyntheticDataSpec spec;
+    private final long fromIndex;
+    private final long toIndex;
+    private final int batchSize;
+
+    public SyntheticDataTasklet(DataSource dataSource, SyntheticDataSpec spec, long fromIndex, long toIndex, int batchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.idBlockAllocator = new IdBlockAllocator(dataSource);
+        this.spec = spec;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+
+        long start = executionContext.getLong(NEXT_INDEX_KEY, fromIndex);
+
+        if (start >= toIndex) return RepeatStatus.FINISHED;
+
+        long end = Math.min(start + batchSize, toIndex);
+
+        int orderCount = jdbcTemplate.execute((ConnectionCallback<Integer>) connection -> this.insert(connection, start, end));
+
+        contribution.incrementWriteCount((int) (end - start));
+        executionContext.putLong(NEXT_INDEX_KEY, end); // 트랜잭션이 commit될 때 함께 저장된다.
+        idBlockAllocator.advanceTo("users", spec.userIdOf(end - 1) + 1); // 이후 JPA/JDBC로 저장되는 회원 id와 겹치지 않도록 한다.
+
+        log.debug("회원 index {} ~ {} 저장 (주문 {}건)", start, end - 1, orderCount);
+
+        return end >= toIndex ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+
+    private int insert(Connection connection, long start, long end) throws SQLException {
+
+        int orderCount = 0;
+        DailyOrderRollupAccumulator rollup = new DailyOrderRollupAccumulator();
+
+        try (PreparedStatement users = connection.prepareStatement(INSERT_USER_SQL);
+             PreparedStatement orders = connection.prepareStatement(INSERT_ORDER_SQL)) {
+
+            for (long index = start; index < end; index++) {
+
+                SplittableRandom random = spec.randomOf(index);
+                long userId = spec.userIdOf(index);
+                long orderCountOfUser = spec.getOrdersPerUser().sample(random);
+                long totalAmount = 0;
+
+                for (long i = 0; i < orderCountOfUser; i++) {
+
+                    int amount = (int) Math.max(0, Math.min(Integer.MAX_VALUE, spec.getAmounts().sample(random))); // orders.amount는 int 컬럼
+                    LocalDate createdDate = spec.createdDateOf(random);
+                    totalAmount += amount;
+                    rollup.add(createdDate, amount);
+
+                    orders.setLong(1, idBlockAllocator.nextId("orders"));
+                    orders.setString(2, "item" + index + "-" + i);
+                    orders.setInt(3, amount);
+                    orders.setDate(4, Date.valueOf(createdDate));
+                    orders.setLong(5, userId);
+                    orders.addBatch();
+                    orderCount++;
+                }
+
+                users.setLong(1, userId);
+                users.setString(2, "synthetic user" + index);
+                users.setString(3, User.Level.NORMAL.name());
+                users.setLong(4, totalAmount);
+                users.addBatch();
+            }
+
+            users.executeBatch(); // orders.user_id가 참조하는 회원을 먼저 저장한다.
+            orders.executeBatch();
+        }
+
+        rollup.flush(connection);
+
+        return orderCount;
+    }
+}
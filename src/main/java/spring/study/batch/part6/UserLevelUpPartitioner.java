@@ -1,21 +1,85 @@
 package spring.study.batch.part6;
 
-import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
 import spring.study.batch.part4.UserRepository;
 
+import javax.sql.DataSource;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-@RequiredArgsConstructor
+/**
+ * 회원 id 범위를 gridSize개로 나누어 partition 별 ExecutionContext에 minId, maxId를 저장한다.
+ * PartitionMode.USER_COUNT, ORDER_COUNT는 실제 row의 분위수로 경계를 정하기 때문에 id가 듬성듬성하거나 주문이 일부 회원에게 몰려 있어도 partition마다 비슷한 양을 처리한다.
+ * 각 partition의 예상 작업량(ESTIMATED_WEIGHT_KEY)을 함께 저장하기 때문에 PartitionWeightListener로 실제 실행 시간과 비교할 수 있다.
+ */
+@Slf4j
 public class UserLevelUpPartitioner implements Partitioner {
-    
+
+    public static final String ESTIMATED_WEIGHT_KEY = "estimatedWeight";
+
+    // 회원 수가 같도록 NTILE로 나눈 구간 별 id 범위
+    private static final String USER_COUNT_SQL = "SELECT tile, MIN(id) AS min_id, MAX(id) AS max_id, COUNT(*) AS weight " +
+        "FROM (SELECT id, NTILE(%d) OVER (ORDER BY id) AS tile FROM users) t " +
+        "GROUP BY tile ORDER BY tile";
+
+    // 회원 별 weight(1 + 주문 수)를 id 순서로 누적하여, 누적 합계의 시작 위치가 속한 구간으로 나눈다. (한 회원이 두 구간에 나뉘지 않는다.)
+    private static final String ORDER_COUNT_SQL = "SELECT FLOOR((cumulative - weight) * %d / total) AS tile, MIN(id) AS min_id, MAX(id) AS max_id, SUM(weight) AS weight " +
+        "FROM (" +
+        "SELECT id, weight, SUM(weight) OVER (ORDER BY id) AS cumulative, SUM(weight) OVER () AS total " +
+        "FROM (SELECT u.id, 1 + COALESCE(o.order_count, 0) AS weight FROM users u " +
+        "LEFT JOIN (SELECT user_id, COUNT(*) AS order_count FROM orders GROUP BY user_id) o ON o.user_id = u.id) w" +
+        ") t GROUP BY FLOOR((cumulative - weight) * %d / total) ORDER BY tile";
+
     private final UserRepository userRepository;
-    
+    private final JdbcTemplate jdbcTemplate;
+    private final PartitionMode mode;
+
+    public UserLevelUpPartitioner(UserRepository userRepository) {
+        this(userRepository, null, PartitionMode.ID_RANGE);
+    }
+
+    public UserLevelUpPartitioner(UserRepository userRepository, DataSource dataSource, PartitionMode mode) {
+        this.userRepository = userRepository;
+        this.jdbcTemplate = mode == PartitionMode.ID_RANGE ? null : new JdbcTemplate(dataSource);
+        this.mode = mode;
+    }
+
     @Override
     public Map<String, ExecutionContext> partition(int gridSize) { // gridSize: salve 사이즈가 된다.
-    
+
+        if (mode == PartitionMode.ID_RANGE) return this.partitionByIdRange(gridSize);
+
+        String sql = mode == PartitionMode.USER_COUNT
+            ? String.format(USER_COUNT_SQL, gridSize)
+            : String.format(ORDER_COUNT_SQL, gridSize, gridSize);
+
+        List<long[]> tiles = jdbcTemplate.query(sql, (rs, rowNum) -> new long[] { rs.getLong("min_id"), rs.getLong("max_id"), rs.getLong("weight") });
+
+        Map<String, ExecutionContext> result = new HashMap<>();
+
+        for (int number = 0; number < tiles.size(); number++) {
+
+            long[] tile = tiles.get(number);
+
+            ExecutionContext value = new ExecutionContext();
+            value.putLong("minId", number == 0 ? tile[0] : tiles.get(number - 1)[1] + 1); // 구간 사이의 빈 id도 포함하여 범위를 이어 붙인다.
+            value.putLong("maxId", tile[1]);
+            value.putLong(ESTIMATED_WEIGHT_KEY, tile[2]);
+
+            result.put("partition" + number, value);
+
+            log.info("{} partition{}: id {} ~ {} (예상 weight {})", mode, number, value.getLong("minId"), tile[1], tile[2]);
+        }
+
+        return result;
+    }
+
+    private Map<String, ExecutionContext> partitionByIdRange(int gridSize) {
+
         long minId = userRepository.findMinId(); // 1
         long maxId = userRepository.findMaxId(); // 40,000
         
@@ -45,6 +109,7 @@ public class UserLevelUpPartitioner implements Partitioner {
             
             value.putLong("minId", start);
             value.putLong("maxId", end);
+            value.putLong(ESTIMATED_WEIGHT_KEY, end - start + 1); // id 간격 (id가 연속된 경우의 회원 수)
             
             start += targetSize;
             end += targetSize;
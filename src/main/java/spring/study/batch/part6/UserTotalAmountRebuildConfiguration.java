@@ -0,0 +1,95 @@
+package spring.study.batch.part6;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import spring.study.batch.part4.UserRepository;
+
+import javax.sql.DataSource;
+
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+public class UserTotalAmountRebuildConfiguration {
+
+    private final String JOB_NAME = "userTotalAmountRebuildJob";
+    private final int RANGE_SIZE = 10_000; // 한 트랜잭션에서 검증/재계산할 id 범위
+    private final int ROWS_PER_PARTITION = 5_000; // GridSizePolicy의 partition 당 목표 회원 수
+
+    private final JobBuilderFactory jobBuilderFactory;
+    private final StepBuilderFactory stepBuilderFactory;
+    private final UserRepository userRepository;
+    private final DataSource dataSource;
+    private final TaskExecutor taskExecutor;
+
+    @Bean(JOB_NAME)
+    public Job userTotalAmountRebuildJob() throws Exception {
+
+        return jobBuilderFactory.get(JOB_NAME)
+            .incrementer(new RunIdIncrementer())
+            .start(this.rebuildManagerStep())
+            .build();
+    }
+
+    @Bean(JOB_NAME + "_rebuildStep.manager")
+    public Step rebuildManagerStep() throws Exception {
+
+        return stepBuilderFactory.get(JOB_NAME + "_rebuildStep.manager")
+            .partitioner(JOB_NAME + "_rebuildStep", this.rebuildPartitioner(null)) // 회원 id 범위를 나누어 병렬로 처리
+            .step(this.rebuildStep())
+            .partitionHandler(this.rebuildPartitionHandler())
+            .build();
+    }
+
+    @Bean(JOB_NAME + "_rebuildPartitioner")
+    @StepScope
+    public Partitioner rebuildPartitioner(@Value("#{jobParameters[partitionMode]}") String partitionMode) {
+
+        return new UserLevelUpPartitioner(userRepository, dataSource, PartitionMode.of(partitionMode)); // 주문 합계를 다시 계산하기 때문에 ORDER_COUNT가 작업량에 가깝다.
+    }
+
+    @Bean(JOB_NAME + "_rebuildPartitionHandler")
+    public PartitionHandler rebuildPartitionHandler() throws Exception {
+
+        GridSizePolicy gridSizePolicy = GridSizePolicy.of(ROWS_PER_PARTITION, taskExecutor, dataSource);
+
+        TaskExecutorPartitionHandler handler = new GridSizePolicyPartitionHandler(gridSizePolicy, stepExecution -> userRepository.count());
+        handler.setStep(this.rebuildStep());
+        handler.setTaskExecutor(taskExecutor);
+
+        return handler;
+    }
+
+    @Bean(JOB_NAME + "_rebuildStep")
+    public Step rebuildStep() {
+
+        return stepBuilderFactory.get(JOB_NAME + "_rebuildStep")
+            .tasklet(this.rebuildTasklet(null, null, null))
+            .listener(new PartitionWeightListener())
+            .build();
+    }
+
+    @Bean(JOB_NAME + "_rebuildTasklet")
+    @StepScope // partition 별 ExecutionContext의 minId, maxId를 사용하기 위해 StepScope로 설정
+    public Tasklet rebuildTasklet(
+        @Value("#{stepExecutionContext[minId]}") Long minId,
+        @Value("#{stepExecutionContext[maxId]}") Long maxId,
+        @Value("#{jobParameters[verifyOnly]}") String verifyOnly
+    ) {
+
+        return new UserTotalAmountRebuildTasklet(dataSource, minId, maxId, RANGE_SIZE, Boolean.parseBoolean(verifyOnly));
+    }
+}
@@ -0,0 +1,76 @@
+package spring.study.batch.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+
+/**
+ * partition에 할당된 id 범위(minId ~ maxId)의 users.total_amount를 orders 기준으로 검증하고, 다른 값은 다시 계산한다.
+ * 한 번의 execute() 호출이 rangeSize 만큼의 id 범위(= 하나의 트랜잭션)를 처리한다.
+ */
+@Slf4j
+public class UserTotalAmountRebuildTasklet implements Tasklet {
+
+    private static final String LAST_ID_KEY = "totalAmountRebuild.lastId";
+    private static final String MISMATCH_COUNT_KEY = "totalAmountRebuild.mismatchCount";
+
+    private static final String ORDERS_SUM = "(SELECT COALESCE(SUM(o.amount), 0) FROM orders o WHERE o.user_id = u.id)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long minId;
+    private final long maxId;
+    private final int rangeSize;
+    private final boolean verifyOnly; // true: 다른 값의 개수만 기록하고 수정하지 않는다.
+
+    public UserTotalAmountRebuildTasklet(DataSource dataSource, long minId, long maxId, int rangeSize, boolean verifyOnly) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.minId = minId;
+        this.maxId = maxId;
+        this.rangeSize = rangeSize;
+        this.verifyOnly = verifyOnly;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+
+        long lastId = executionContext.getLong(LAST_ID_KEY, minId - 1);
+
+        if (lastId >= maxId) return RepeatStatus.FINISHED;
+
+        long start = lastId + 1;
+        long end = Math.min(start + rangeSize - 1, maxId);
+
+        Integer mismatches = jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM users u WHERE u.id BETWEEN ? AND ? AND u.total_amount <> " + ORDERS_SUM,
+            Integer.class, start, end
+        );
+
+        if (mismatches > 0 && !verifyOnly) {
+
+            int updated = jdbcTemplate.update(
+                "UPDATE users u SET total_amount = " + ORDERS_SUM + ", level_dirty = TRUE" // 합계가 바뀐 회원은 INCREMENTAL 모드에서 등급을 다시 판단한다.
+                    + " WHERE u.id BETWEEN ? AND ? AND u.total_amount <> " + ORDERS_SUM,
+                start, end
+            );
+            contribution.incrementWriteCount(updated);
+        }
+
+        executionContext.putLong(LAST_ID_KEY, end);
+        executionContext.putLong(MISMATCH_COUNT_KEY, executionContext.getLong(MISMATCH_COUNT_KEY, 0) + mismatches);
+
+        if (end >= maxId) {
+            log.info("users {} ~ {} total_amount 불일치 {}건 (verifyOnly: {})", minId, maxId, executionContext.getLong(MISMATCH_COUNT_KEY), verifyOnly);
+            return RepeatStatus.FINISHED;
+        }
+
+        return RepeatStatus.CONTINUABLE;
+    }
+}
@@ -0,0 +1,13 @@
+CREATE TABLE IF NOT EXISTS level_rule (
+    level      VARCHAR(255) PRIMARY KEY,
+    min_amount BIGINT NOT NULL
+);
+
+INSERT INTO level_rule (level, min_amount)
+VALUES ('NORMAL', 0);
+INSERT INTO level_rule (level, min_amount)
+VALUES ('SILVER', 200000);
+INSERT INTO level_rule (level, min_amount)
+VALUES ('GOLD', 300000);
+INSERT INTO level_rule (level, min_amount)
+VALUES ('VIP', 500000);
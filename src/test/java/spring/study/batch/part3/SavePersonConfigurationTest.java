@@ -81,4 +81,25 @@ class SavePersonConfigurationTest {
             .isEqualTo(personRepository.count())
             .isEqualTo(100);
     }
-}
\ No newline at end of file
+    
+    @Test
+    void testPartitionNotAllowDuplicate() throws Exception {
+        // given
+        JobParameters jobParameters = new JobParametersBuilder()
+            .addString("allow_duplicate", "false")
+            .addString("gridSize", "4") // person.csv를 4개의 byte 범위로 나누어 병렬로 저장
+            .toJobParameters();
+        
+        // when
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+        
+        // then: 중복 검사는 partition 사이에서도 적용된다.
+        assertThat(jobExecution.getStepExecutions()
+            .stream()
+            .filter(stepExecution -> stepExecution.getStepName().startsWith("savePersonStep:")) // manager Step은 partition의 합계를 가지고 있기 때문에 제외
+            .mapToInt(StepExecution::getWriteCount)
+            .sum())
+            .isEqualTo(personRepository.count())
+            .isEqualTo(3);
+    }
+}
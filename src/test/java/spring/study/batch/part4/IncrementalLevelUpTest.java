@@ -0,0 +1,120 @@
+package spring.study.batch.part4;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.test.StepRunner;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import spring.study.batch.TestConfiguration;
+import spring.study.batch.part6.IdBlockAllocator;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { UserConfiguration.class, LevelRuleConfiguration.class, TestConfiguration.class })
+class IncrementalLevelUpTest {
+
+    @Autowired
+    private JobLauncher jobLauncher;
+    @Autowired
+    private JobRepository jobRepository;
+    @Autowired
+    @Qualifier("userJob_userLevelUpStep")
+    private Step userLevelUpStep;
+    @Autowired
+    private DataSource dataSource;
+
+    @AfterEach
+    void tearDown() {
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("DELETE FROM orders");
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("DELETE FROM id_block");
+    }
+
+    /**
+     * 두 allocator가 번갈아 id block을 사용하면, 첫 번째 실행이 끝난 뒤에 저장된 회원(주문)이 이전 실행이 본 id보다 작은 id를 받는다.
+     * 두 번째 실행은 그 회원도 등급 상향해야 한다.
+     */
+    @Test
+    void levelUpUserSavedWithSmallerIdAfterCompletedRun() throws Exception {
+
+        IdBlockAllocator first = new IdBlockAllocator(dataSource, 10);
+        IdBlockAllocator second = new IdBlockAllocator(dataSource, 10);
+
+        long silverUserId = this.saveUser(first, 200_000); // users/orders id 1 ~ 10 block
+        long normalUserId = this.saveUser(second, 1_000); // users/orders id 11 ~ 20 block
+
+        StepExecution firstRun = this.launch(1);
+
+        assertThat(firstRun.getReadCount()).isEqualTo(2);
+        assertThat(LevelUpTally.countOf(firstRun, User.Level.SILVER)).isEqualTo(1);
+
+        long goldUserId = this.saveUser(first, 300_000); // 첫 번째 block의 남은 id
+
+        assertThat(goldUserId).isLessThan(normalUserId);
+
+        StepExecution secondRun = this.launch(2);
+
+        assertThat(secondRun.getReadCount()).isEqualTo(1);
+        assertThat(LevelUpTally.countOf(secondRun, User.Level.GOLD)).isEqualTo(1);
+        assertThat(this.levelOf(goldUserId)).isEqualTo(User.Level.GOLD.name());
+        assertThat(this.levelOf(silverUserId)).isEqualTo(User.Level.SILVER.name());
+
+        StepExecution thirdRun = this.launch(3);
+
+        assertThat(thirdRun.getReadCount()).isZero();
+    }
+
+    private long saveUser(IdBlockAllocator allocator, int amount) {
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        long userId = allocator.nextId("users");
+
+        jdbcTemplate.update("INSERT INTO users (id, username, level, total_amount, level_dirty) VALUES (?, ?, ?, ?, TRUE)",
+            userId, "user" + userId, User.Level.NORMAL.name(), amount);
+        jdbcTemplate.update("INSERT INTO orders (id, item_name, amount, created_date, user_id, rollup_dirty) VALUES (?, ?, ?, ?, ?, TRUE)",
+            allocator.nextId("orders"), "item" + userId, amount, Date.valueOf(LocalDate.of(2020, 11, 1)), userId);
+
+        return userId;
+    }
+
+    private StepExecution launch(long run) {
+
+        JobParameters jobParameters = new JobParametersBuilder()
+            .addString("levelUpMode", "incremental")
+            .addLong("run", run)
+            .toJobParameters();
+
+        JobExecution jobExecution = new StepRunner(jobLauncher, jobRepository).launchStep(userLevelUpStep, jobParameters);
+
+        assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        return jobExecution.getStepExecutions().iterator().next();
+    }
+
+    private String levelOf(long userId) {
+
+        return new JdbcTemplate(dataSource).queryForObject("SELECT level FROM users WHERE id = ?", String.class, userId);
+    }
+}
@@ -0,0 +1,51 @@
+package spring.study.batch.part4;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LevelRuleTest {
+
+    @Test
+    void testDefaults() {
+
+        LevelRule levelRule = LevelRule.defaults();
+
+        assertThat(levelRule.classify(199_999)).isEqualTo(User.Level.NORMAL);
+        assertThat(levelRule.classify(200_000)).isEqualTo(User.Level.SILVER);
+        assertThat(levelRule.classify(300_000)).isEqualTo(User.Level.GOLD);
+        assertThat(levelRule.classify(500_000)).isEqualTo(User.Level.VIP);
+
+        assertThat(levelRule.availableLevelUp(User.Level.NORMAL, 200_000)).isTrue();
+        assertThat(levelRule.availableLevelUp(User.Level.SILVER, 200_000)).isFalse();
+        assertThat(levelRule.availableLevelUp(User.Level.VIP, 1_000_000)).isFalse();
+        assertThat(levelRule.availableLevelUp(null, 1_000_000)).isFalse();
+    }
+
+    @Test
+    void testClassifyChunk() {
+
+        LevelRule levelRule = LevelRule.parse("SILVER:100,GOLD:200,VIP:300");
+
+        long[] totalAmounts = { 0, 100, 250, 300, 99 };
+        byte[] codes = new byte[totalAmounts.length];
+
+        levelRule.classify(totalAmounts, codes, totalAmounts.length);
+
+        assertThat(codes).containsExactly(
+            levelRule.codeOf(User.Level.NORMAL),
+            levelRule.codeOf(User.Level.SILVER),
+            levelRule.codeOf(User.Level.GOLD),
+            levelRule.codeOf(User.Level.VIP),
+            levelRule.codeOf(User.Level.NORMAL)
+        );
+    }
+
+    @Test
+    void testMissingLevel() {
+
+        assertThatThrownBy(() -> LevelRule.parse("SILVER:100,VIP:300"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
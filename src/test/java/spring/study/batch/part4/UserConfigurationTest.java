@@ -1,40 +1,82 @@
 package spring.study.batch.part4;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.junit.runner.RunWith;
 import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
 import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.test.JobLauncherTestUtils;
 import org.springframework.batch.test.context.SpringBatchTest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringRunner;
 import spring.study.batch.TestConfiguration;
 
+import javax.sql.DataSource;
 import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBatchTest
 @RunWith(SpringRunner.class)
-@ContextConfiguration(classes = { UserConfiguration.class, TestConfiguration.class })
+@ContextConfiguration(classes = { UserConfiguration.class, LevelRuleConfiguration.class, TestConfiguration.class })
 class UserConfigurationTest {
 
     @Autowired
     private JobLauncherTestUtils jobLauncherTestUtils;
     @Autowired
     private UserRepository userRepository;
+    @Autowired
+    private DataSource dataSource;
+
+    @AfterEach
+    void tearDown() {
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("DELETE FROM orders");
+        jdbcTemplate.update("DELETE FROM users");
+    }
 
     @Test
     void test() throws Exception {
 
-        JobExecution jobExecution = jobLauncherTestUtils.launchJob();
+        this.assertLevelUp(this.launch(null));
+    }
+
+    @Test
+    void sqlMode() throws Exception {
+
+        this.assertLevelUp(this.launch("sql"));
+    }
+
+    @Test
+    void projectionMode() throws Exception {
+
+        this.assertLevelUp(this.launch("projection"));
+    }
+
+    private JobExecution launch(String levelUpMode) throws Exception {
+
+        JobParametersBuilder jobParameters = new JobParametersBuilder(jobLauncherTestUtils.getUniqueJobParameters())
+            .addLong("seedSize", 100L); // 등급별 100명
+
+        if (levelUpMode != null) jobParameters.addString("levelUpMode", levelUpMode);
+
+        return jobLauncherTestUtils.launchJob(jobParameters.toJobParameters());
+    }
+
+    private void assertLevelUp(JobExecution jobExecution) {
 
         int size = userRepository.findAllByUpdatedDate(LocalDate.now()).size();
 
         assertThat(jobExecution.getStepExecutions().stream()
-            .filter(x -> x.getStepName().equals("userLevelUpStep"))
+            .filter(x -> x.getStepName().equals("userJob_userLevelUpStep"))
             .mapToInt(StepExecution::getWriteCount)
             .sum())
             .isEqualTo(size)
@@ -42,5 +84,22 @@ class UserConfigurationTest {
 
         assertThat(userRepository.count())
             .isEqualTo(400);
+
+        Map<String, Integer> countByLevel = new HashMap<>();
+
+        new JdbcTemplate(dataSource).query("SELECT level, COUNT(*) FROM users GROUP BY level",
+            rs -> { countByLevel.put(rs.getString(1), rs.getInt(2)); });
+
+        assertEquals(100, countByLevel.get(User.Level.NORMAL.name()));
+        assertEquals(100, countByLevel.get(User.Level.SILVER.name()));
+        assertEquals(100, countByLevel.get(User.Level.GOLD.name()));
+        assertEquals(100, countByLevel.get(User.Level.VIP.name()));
+
+        // 결과 출력(LevelUpJobExecutionListener)에 사용하는 등급별 집계도 모든 모드에서 같아야 한다.
+        for (User.Level level : new User.Level[] { User.Level.SILVER, User.Level.GOLD, User.Level.VIP }) {
+            assertEquals(100, jobExecution.getStepExecutions().stream()
+                .mapToLong(stepExecution -> LevelUpTally.countOf(stepExecution, level))
+                .sum());
+        }
     }
-}
\ No newline at end of file
+}
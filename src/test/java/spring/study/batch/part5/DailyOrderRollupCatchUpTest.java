@@ -0,0 +1,116 @@
+package spring.study.batch.part5;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.test.StepRunner;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import spring.study.batch.TestConfiguration;
+import spring.study.batch.part6.IdBlockAllocator;
+
+import javax.sql.DataSource;
+import java.sql.Date;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { DailyOrderRollupConfiguration.class, TestConfiguration.class })
+class DailyOrderRollupCatchUpTest {
+
+    private static final LocalDate FIRST_DAY = LocalDate.of(2020, 11, 1);
+    private static final LocalDate SECOND_DAY = LocalDate.of(2020, 11, 2);
+
+    @Autowired
+    private JobLauncher jobLauncher;
+    @Autowired
+    private JobRepository jobRepository;
+    @Autowired
+    @Qualifier("dailyOrderRollupJob_catchUpStep")
+    private Step catchUpStep;
+    @Autowired
+    private DataSource dataSource;
+
+    @AfterEach
+    void tearDown() {
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("DELETE FROM orders");
+        jdbcTemplate.update("DELETE FROM daily_order_rollup");
+        jdbcTemplate.update("DELETE FROM id_block");
+    }
+
+    /**
+     * 두 allocator가 번갈아 id block을 사용하면, 첫 번째 실행이 끝난 뒤에 저장된 주문이 이전 실행이 본 id보다 작은 id를 받는다.
+     * 두 번째 실행은 그 주문의 날짜도 다시 집계해야 한다.
+     */
+    @Test
+    void rebuildDayOfOrderSavedWithSmallerIdAfterCompletedRun() {
+
+        IdBlockAllocator first = new IdBlockAllocator(dataSource, 10);
+        IdBlockAllocator second = new IdBlockAllocator(dataSource, 10);
+
+        this.saveOrder(first, FIRST_DAY, 1_000); // orders id 1 ~ 10 block
+        long largerId = this.saveOrder(second, SECOND_DAY, 2_000); // orders id 11 ~ 20 block
+
+        StepExecution firstRun = this.launch(1);
+
+        assertThat(firstRun.getWriteCount()).isEqualTo(2);
+        assertThat(this.rollupOf(FIRST_DAY)).containsExactly(1_000L, 1L);
+        assertThat(this.rollupOf(SECOND_DAY)).containsExactly(2_000L, 1L);
+
+        long smallerId = this.saveOrder(first, SECOND_DAY, 500); // 첫 번째 block의 남은 id
+
+        assertThat(smallerId).isLessThan(largerId);
+
+        StepExecution secondRun = this.launch(2);
+
+        assertThat(secondRun.getWriteCount()).isEqualTo(1);
+        assertThat(this.rollupOf(FIRST_DAY)).containsExactly(1_000L, 1L);
+        assertThat(this.rollupOf(SECOND_DAY)).containsExactly(2_500L, 2L);
+
+        StepExecution thirdRun = this.launch(3);
+
+        assertThat(thirdRun.getWriteCount()).isZero();
+    }
+
+    private long saveOrder(IdBlockAllocator allocator, LocalDate createdDate, int amount) {
+
+        long orderId = allocator.nextId("orders");
+
+        new JdbcTemplate(dataSource).update("INSERT INTO orders (id, item_name, amount, created_date, rollup_dirty) VALUES (?, ?, ?, ?, TRUE)",
+            orderId, "item" + orderId, amount, Date.valueOf(createdDate));
+
+        return orderId;
+    }
+
+    private StepExecution launch(long run) {
+
+        JobExecution jobExecution = new StepRunner(jobLauncher, jobRepository).launchStep(catchUpStep, new JobParametersBuilder()
+            .addLong("run", run)
+            .toJobParameters());
+
+        assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+
+        return jobExecution.getStepExecutions().iterator().next();
+    }
+
+    private Long[] rollupOf(LocalDate orderDate) {
+
+        return new JdbcTemplate(dataSource).queryForObject("SELECT total_amount, order_count FROM daily_order_rollup WHERE order_date = ?",
+            (rs, rowNum) -> new Long[] { rs.getLong(1), rs.getLong(2) }, Date.valueOf(orderDate));
+    }
+}
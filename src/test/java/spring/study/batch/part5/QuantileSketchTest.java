@@ -0,0 +1,126 @@
+package spring.study.batch.part5;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class QuantileSketchTest {
+
+    private static final double[] QUANTILES = { 0, 0.01, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 0.999, 1 };
+
+    @Test
+    void testRelativeErrorBound() {
+
+        long[] values = logNormal(100_000, 42);
+
+        QuantileSketch sketch = new QuantileSketch();
+
+        for (long value : values) {
+            sketch.add(value);
+        }
+
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+
+        for (double q : QUANTILES) {
+
+            long exact = sorted[(int) Math.floor(q * (sorted.length - 1))];
+
+            // bucket 대표값의 상대 오차(α) + 정수 반올림
+            assertThat((double) Math.abs(sketch.quantile(q) - exact))
+                .as("q=%s, exact=%d", q, exact)
+                .isLessThanOrEqualTo(exact * QuantileSketch.RELATIVE_ACCURACY + 1);
+        }
+
+        assertThat(sketch.getCount()).isEqualTo(values.length);
+        assertThat(sketch.getSum()).isEqualTo(Arrays.stream(values).sum());
+        assertThat(sketch.getMin()).isEqualTo(sorted[0]);
+        assertThat(sketch.getMax()).isEqualTo(sorted[sorted.length - 1]);
+    }
+
+    @Test
+    void testMergeEqualsSingleSketch() {
+
+        long[] values = logNormal(10_000, 7);
+
+        QuantileSketch a = new QuantileSketch();
+        QuantileSketch b = new QuantileSketch();
+        QuantileSketch all = new QuantileSketch();
+
+        for (int i = 0; i < values.length; i++) {
+            (i % 3 == 0 ? a : b).add(values[i]); // 나누는 방식과 관계없이 같은 결과
+            all.add(values[i]);
+        }
+
+        a.add(0); // 0 이하의 값도 합쳐진다.
+        all.add(0);
+
+        QuantileSketch merged = new QuantileSketch();
+        merged.merge(a);
+        merged.merge(new QuantileSketch()); // 빈 sketch는 영향이 없다.
+        merged.merge(b);
+
+        assertSameSketch(merged, all);
+    }
+
+    @Test
+    void testWriteToReadFrom() throws Exception {
+
+        QuantileSketch sketch = new QuantileSketch();
+
+        for (long value : logNormal(1_000, 3)) {
+            sketch.add(value);
+        }
+
+        sketch.add(0);
+        sketch.add(-5);
+
+        assertSameSketch(roundTrip(sketch), sketch);
+        assertSameSketch(roundTrip(new QuantileSketch()), new QuantileSketch());
+    }
+
+    private static QuantileSketch roundTrip(QuantileSketch sketch) throws Exception {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            sketch.writeTo(out);
+        }
+
+        return QuantileSketch.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    private static void assertSameSketch(QuantileSketch actual, QuantileSketch expected) {
+
+        assertThat(actual.getCount()).isEqualTo(expected.getCount());
+        assertThat(actual.getSum()).isEqualTo(expected.getSum());
+        assertThat(actual.getMin()).isEqualTo(expected.getMin());
+        assertThat(actual.getMax()).isEqualTo(expected.getMax());
+
+        for (double q : QUANTILES) {
+            assertThat(actual.quantile(q)).as("q=%s", q).isEqualTo(expected.quantile(q));
+        }
+    }
+
+    /**
+     * 주문 금액처럼 한쪽으로 긴 꼬리를 가진 분포 (중앙값 약 20,000)
+     */
+    private static long[] logNormal(int size, long seed) {
+
+        Random random = new Random(seed);
+        long[] values = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            values[i] = Math.max(1, Math.round(Math.exp(10 + random.nextGaussian())));
+        }
+
+        return values;
+    }
+}
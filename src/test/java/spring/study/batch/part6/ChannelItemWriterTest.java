@@ -0,0 +1,234 @@
+package spring.study.batch.part6;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ChannelItemWriterTest {
+
+    private static final String[] NAMES = { "name", "amount" };
+    private static final RecordBinder<Item> BINDER = (item, sink) -> {
+        sink.putString(item.name);
+        sink.putLong(item.amount);
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void gzipMembersDecompressToSameCsv() throws Exception {
+
+        List<List<Item>> chunks = this.chunks(5, 300);
+
+        Path csv = this.writeChunks(OutputFormat.CSV, chunks);
+        Path gzip = this.writeChunks(OutputFormat.CSV_GZIP, chunks);
+
+        byte[] decompressed;
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gzip))) { // zcat과 같이 이어 붙인 member를 모두 읽는다.
+            decompressed = this.readAll(in);
+        }
+
+        assertThat(new String(decompressed, StandardCharsets.UTF_8))
+            .isEqualTo(new String(Files.readAllBytes(csv), StandardCharsets.UTF_8))
+            .startsWith("name,amount\n")
+            .hasLineCount(1 + 5 * 300);
+    }
+
+    @Test
+    void ndjsonEscapesStrings() throws Exception {
+
+        List<Item> items = Arrays.asList(
+            new Item("quote \" backslash \\ slash /", 1),
+            new Item("line\nbreak\ttab\r\u0001", -2),
+            new Item("한글 😀", Long.MAX_VALUE)
+        );
+
+        Path ndjson = this.writeChunks(OutputFormat.NDJSON, Arrays.asList(items));
+        List<String> lines = Files.readAllLines(ndjson, StandardCharsets.UTF_8);
+
+        assertThat(lines).hasSize(items.size());
+
+        ObjectMapper objectMapper = new ObjectMapper();
+
+        for (int i = 0; i < items.size(); i++) {
+            JsonNode node = objectMapper.readTree(lines.get(i));
+            assertThat(node.get("name").asText()).isEqualTo(items.get(i).name);
+            assertThat(node.get("amount").asLong()).isEqualTo(items.get(i).amount);
+        }
+    }
+
+    @Test
+    void binaryRecordsAreLengthPrefixed() throws Exception {
+
+        List<List<Item>> chunks = this.chunks(3, 100);
+        List<Item> decoded = new ArrayList<>();
+
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(this.writeChunks(OutputFormat.BINARY, chunks)))) {
+
+            while (true) {
+
+                int length;
+
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                byte[] name = new byte[in.readInt()];
+                in.readFully(name);
+                long amount = in.readLong();
+
+                assertThat(length).isEqualTo(Integer.BYTES + name.length + Long.BYTES);
+
+                decoded.add(new Item(new String(name, StandardCharsets.UTF_8), amount));
+            }
+        }
+
+        assertThat(decoded).hasSize(300);
+        assertThat(decoded.get(299).name).isEqualTo(chunks.get(2).get(99).name);
+        assertThat(decoded.get(299).amount).isEqualTo(chunks.get(2).get(99).amount);
+    }
+
+    @Test
+    void rolledBackChunkIsNotWritten() throws Exception {
+
+        for (OutputFormat format : new OutputFormat[] { OutputFormat.CSV, OutputFormat.CSV_GZIP }) {
+
+            Path file = directory.resolve("rollback." + format);
+            ChannelItemWriter<Item> writer = this.writer(format, file);
+            ExecutionContext executionContext = new ExecutionContext();
+
+            writer.open(executionContext);
+
+            this.writeInTransaction(writer, Arrays.asList(new Item("first", 1)), true);
+            this.writeInTransaction(writer, Arrays.asList(new Item("rolled back", 2)), false);
+            this.writeInTransaction(writer, Arrays.asList(new Item("rolled back", 2)), true); // faultTolerant scan으로 다시 처리된 item
+
+            writer.update(executionContext);
+            writer.close();
+
+            byte[] bytes = Files.readAllBytes(file);
+
+            if (format == OutputFormat.CSV_GZIP) {
+                try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+                    bytes = this.readAll(in);
+                }
+            }
+
+            assertThat(new String(bytes, StandardCharsets.UTF_8)).isEqualTo("name,amount\nfirst,1\nrolled back,2\n");
+            assertThat(executionContext.getLong("test.position")).isEqualTo(Files.size(file));
+            assertThat(executionContext.getLong("test.written")).isEqualTo(2);
+        }
+    }
+
+    private void writeInTransaction(ChannelItemWriter<Item> writer, List<Item> items, boolean commit) throws Exception {
+
+        TransactionSynchronizationManager.initSynchronization();
+
+        try {
+            writer.write(items);
+
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+
+            if (commit) synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+
+            synchronizations.forEach(synchronization -> synchronization.afterCompletion(commit
+                ? TransactionSynchronization.STATUS_COMMITTED
+                : TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Path writeChunks(OutputFormat format, List<List<Item>> chunks) throws Exception {
+
+        Path file = directory.resolve(format.fileName("output.csv"));
+        ChannelItemWriter<Item> writer = this.writer(format, file);
+
+        writer.open(new ExecutionContext());
+
+        try {
+            for (List<Item> chunk : chunks) {
+                writer.write(chunk);
+            }
+        } finally {
+            writer.close();
+        }
+
+        return file;
+    }
+
+    private ChannelItemWriter<Item> writer(OutputFormat format, Path file) {
+
+        ChannelItemWriter<Item> writer = new ChannelItemWriter<>(BINDER, NAMES, format);
+        writer.setName("test");
+        writer.setResource(new FileSystemResource(file));
+        writer.setHeader("name,amount");
+        writer.setBufferSize(1_024); // chunk 하나가 buffer보다 크도록 작게 설정한다.
+        writer.afterPropertiesSet();
+
+        return writer;
+    }
+
+    private List<List<Item>> chunks(int count, int size) {
+
+        List<List<Item>> chunks = new ArrayList<>();
+
+        for (int c = 0; c < count; c++) {
+
+            List<Item> chunk = new ArrayList<>();
+
+            for (int i = 0; i < size; i++) {
+                chunk.add(new Item("item" + c + "-" + i, (long) c * size + i));
+            }
+
+            chunks.add(chunk);
+        }
+
+        return chunks;
+    }
+
+    private byte[] readAll(InputStream in) throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes = new byte[8_192];
+
+        for (int read = in.read(bytes); read >= 0; read = in.read(bytes)) {
+            out.write(bytes, 0, read);
+        }
+
+        return out.toByteArray();
+    }
+
+    private static class Item {
+
+        private final String name;
+        private final long amount;
+
+        private Item(String name, long amount) {
+            this.name = name;
+            this.amount = amount;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package spring.study.batch.part6;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CsvByteRangePartitionerTest {
+
+    private static final byte[] BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+    private static final int[] GRID_SIZES = { 1, 2, 3, 7, 16, 1_000 }; // 1,000: 범위가 한 줄보다 짧다.
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readEveryLineExactlyOnce() throws Exception {
+
+        List<String> lines = new ArrayList<>();
+
+        for (int i = 0; i < 200; i++) {
+            lines.add("name" + i + "," + "x".repeat(i % 37) + "," + i); // 줄 길이가 달라서 범위 경계가 줄 중간에 걸린다.
+        }
+
+        for (boolean bom : new boolean[] { false, true }) {
+            for (boolean trailingNewline : new boolean[] { false, true }) { // 마지막 범위가 줄바꿈 없이 끝나는 경우 포함
+
+                Path file = this.write(bom, "name,memo,age", lines, trailingNewline);
+
+                for (int gridSize : GRID_SIZES) {
+                    assertThat(this.readPartitions(file, gridSize))
+                        .as("bom=%s, trailingNewline=%s, gridSize=%d", bom, trailingNewline, gridSize)
+                        .isEqualTo(lines);
+                }
+            }
+        }
+    }
+
+    @Test
+    void rangesStartAtLineBoundariesAndCoverFile() throws Exception {
+
+        List<String> lines = new ArrayList<>();
+
+        for (int i = 0; i < 50; i++) {
+            lines.add("a".repeat(1 + i * 7 % 23) + "," + i);
+        }
+
+        Path file = this.write(true, "name,age", lines, true);
+        byte[] bytes = Files.readAllBytes(file);
+        int dataStart = BOM.length + "name,age\n".length();
+
+        for (int gridSize : GRID_SIZES) {
+
+            Map<String, ExecutionContext> partitions = new TreeMap<>(new CsvByteRangePartitioner(new FileSystemResource(file), 1).partition(gridSize));
+
+            assertThat(partitions.size()).isBetween(1, gridSize);
+
+            long expectedStart = dataStart;
+
+            for (ExecutionContext executionContext : partitions.values()) {
+
+                long start = executionContext.getLong(CsvByteRangePartitioner.START_OFFSET_KEY);
+                long end = executionContext.getLong(CsvByteRangePartitioner.END_OFFSET_KEY);
+
+                assertThat(start).isEqualTo(expectedStart); // 빈 틈이나 겹치는 범위가 없다.
+                assertThat(end).isGreaterThan(start); // 빈 범위는 만들지 않는다.
+                assertThat(bytes[(int) start - 1]).isEqualTo((byte) '\n'); // 줄의 시작
+
+                expectedStart = end;
+            }
+
+            assertThat(expectedStart).isEqualTo(bytes.length); // 마지막 범위는 파일 끝까지
+        }
+    }
+
+    private List<String> readPartitions(Path file, int gridSize) throws Exception {
+
+        Map<String, ExecutionContext> partitions = new TreeMap<>(new CsvByteRangePartitioner(new FileSystemResource(file), 1).partition(gridSize));
+        List<String> lines = new ArrayList<>();
+
+        for (ExecutionContext executionContext : partitions.values()) {
+
+            MappedCsvItemReader<String> reader = new MappedCsvItemReader<>(record -> record.getString(0) + "," + record.getString(1) + "," + record.getString(2));
+            reader.setName("partition");
+            reader.setResource(new FileSystemResource(file));
+            reader.setLinesToSkip(1);
+            reader.setStartOffset(executionContext.getLong(CsvByteRangePartitioner.START_OFFSET_KEY));
+            reader.setEndOffset(executionContext.getLong(CsvByteRangePartitioner.END_OFFSET_KEY));
+            reader.afterPropertiesSet();
+            reader.open(new ExecutionContext());
+
+            try {
+                for (String line = reader.read(); line != null; line = reader.read()) {
+                    lines.add(line);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+
+        return lines;
+    }
+
+    private Path write(boolean bom, String header, List<String> lines, boolean trailingNewline) throws Exception {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        if (bom) bytes.write(BOM);
+
+        bytes.write((header + "\n" + String.join("\n", lines) + (trailingNewline ? "\n" : "")).getBytes(StandardCharsets.UTF_8));
+
+        return Files.write(Files.createTempFile(directory, "partition", ".csv"), bytes.toByteArray());
+    }
+}
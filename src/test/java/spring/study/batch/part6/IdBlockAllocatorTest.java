@@ -0,0 +1,114 @@
+package spring.study.batch.part6;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IdBlockAllocatorTest {
+
+    private DriverManagerDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+
+        // 테스트마다 별도의 H2 DB (다른 테스트의 Spring context와 id_block을 공유하지 않는다.)
+        dataSource = new DriverManagerDataSource("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000", "sa", "");
+        jdbcTemplate = new JdbcTemplate(dataSource);
+
+        jdbcTemplate.execute("CREATE TABLE id_block (name VARCHAR(255) PRIMARY KEY, next_val BIGINT NOT NULL)");
+        jdbcTemplate.execute("CREATE TABLE orders (id BIGINT PRIMARY KEY)");
+        jdbcTemplate.execute("CREATE TABLE users (id BIGINT PRIMARY KEY)");
+    }
+
+    @Test
+    void concurrentNextIdHasNoDuplicates() throws Exception {
+
+        jdbcTemplate.update("INSERT INTO orders (id) VALUES (41)");
+
+        int threads = 8;
+        int idsPerThread = 500;
+
+        // 같은 allocator를 공유하는 thread와 다른 allocator(다른 JVM)를 함께 사용한다.
+        IdBlockAllocator shared = new IdBlockAllocator(dataSource, 7);
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+
+        try {
+            for (int t = 0; t < threads; t++) {
+
+                IdBlockAllocator allocator = t % 2 == 0 ? shared : new IdBlockAllocator(dataSource, 7);
+
+                futures.add(executorService.submit((Callable<List<Long>>) () -> {
+
+                    List<Long> ids = new ArrayList<>();
+
+                    for (int i = 0; i < idsPerThread; i++) {
+                        ids.add(allocator.nextId("orders")); // 첫 할당은 모든 thread가 동시에 id_block 행을 만든다.
+                    }
+
+                    return ids;
+                }));
+            }
+
+            Set<Long> ids = new HashSet<>();
+
+            for (Future<List<Long>> future : futures) {
+                for (long id : future.get()) {
+                    assertThat(ids.add(id)).as("id=%d", id).isTrue();
+                }
+            }
+
+            assertThat(ids).hasSize(threads * idsPerThread);
+            assertThat(ids.stream().mapToLong(Long::longValue).min().getAsLong()).isEqualTo(42);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void seedFromMaxIdWhenRowIsMissing() {
+
+        jdbcTemplate.update("INSERT INTO orders (id) VALUES (3), (41), (17)");
+
+        IdBlockAllocator allocator = new IdBlockAllocator(dataSource, 10);
+
+        assertThat(allocator.nextId("orders")).isEqualTo(42);
+        assertThat(allocator.nextId("orders")).isEqualTo(43);
+        assertThat(allocator.nextId("users")).isEqualTo(1); // 빈 테이블
+
+        assertThat(jdbcTemplate.queryForObject("SELECT next_val FROM id_block WHERE name = 'orders'", Long.class)).isEqualTo(52);
+        assertThat(jdbcTemplate.queryForObject("SELECT next_val FROM id_block WHERE name = 'users'", Long.class)).isEqualTo(11);
+    }
+
+    @Test
+    void advanceTo() {
+
+        IdBlockAllocator allocator = new IdBlockAllocator(dataSource, 10);
+        IdBlockAllocator other = new IdBlockAllocator(dataSource, 10);
+
+        assertThat(allocator.nextId("users")).isEqualTo(1);
+
+        allocator.advanceTo("users", 100); // 남은 block(2 ~ 10)은 버린다.
+
+        assertThat(allocator.nextId("users")).isEqualTo(100);
+        assertThat(other.nextId("users")).isEqualTo(110);
+
+        allocator.advanceTo("users", 5); // 이미 할당한 범위로 되돌아가지 않는다.
+
+        assertThat(allocator.nextId("users")).isEqualTo(120);
+    }
+}
@@ -0,0 +1,199 @@
+package spring.study.batch.part6;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ParseException;
+import org.springframework.core.io.FileSystemResource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedCsvItemReaderTest {
+
+    private static final byte[] BOM = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readQuotedFieldsWithEmbeddedCommasAndQuotes() throws Exception {
+
+        Path file = this.write("name,age,address\n"
+            + "\"Kim, Minsu\",20,\"Seoul \"\"Gangnam\"\"\"\n"
+            + " Lee , 30 ,\"\"\n");
+
+        List<List<String>> items = this.readAll(this.reader(file, 1, MappedCsvItemReader.DEFAULT_WINDOW_SIZE), new ExecutionContext());
+
+        assertThat(items).containsExactly(
+            Arrays.asList("Kim, Minsu", "20", "Seoul \"Gangnam\""),
+            Arrays.asList("Lee", "30", "")
+        );
+    }
+
+    @Test
+    void readCrlfAndBomAndSkipBlankLines() throws Exception {
+
+        Path file = this.write(BOM, "name,age\r\n홍길동,20\r\n\r\n\"a\r\nb\",30\r\nlast,40");
+
+        List<List<String>> items = this.readAll(this.reader(file, 1, MappedCsvItemReader.DEFAULT_WINDOW_SIZE), new ExecutionContext());
+
+        assertThat(items).containsExactly(
+            Arrays.asList("홍길동", "20"),
+            Arrays.asList("a\r\nb", "30"),
+            Arrays.asList("last", "40")
+        );
+    }
+
+    @Test
+    void readLinesAcrossWindowBoundaries() throws Exception {
+
+        StringBuilder content = new StringBuilder();
+        List<List<String>> expected = new ArrayList<>();
+
+        for (int i = 0; i < 500; i++) {
+            content.append("name").append(i).append(',').append(i).append('\n');
+            expected.add(Arrays.asList("name" + i, String.valueOf(i)));
+        }
+
+        List<List<String>> items = this.readAll(this.reader(this.write(content.toString()), 0, 1_024), new ExecutionContext());
+
+        assertThat(items).isEqualTo(expected);
+    }
+
+    @Test
+    void failWhenLineIsLongerThanWindow() throws Exception {
+
+        char[] longValue = new char[2_048];
+        Arrays.fill(longValue, 'x');
+
+        Path file = this.write("short,1\n" + new String(longValue) + ",2\nshort,3\n");
+
+        MappedCsvItemReader<List<String>> reader = this.reader(file, 0, 1_024);
+        reader.open(new ExecutionContext());
+
+        try {
+            assertThat(reader.read()).containsExactly("short", "1");
+            assertThatThrownBy(reader::read).isInstanceOf(ParseException.class);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    void restartFromSavedOffset() throws Exception {
+
+        Path file = this.write(BOM, "name,age\r\na,1\r\nb,2\r\nc,3\r\nd,4\r\n");
+
+        ExecutionContext executionContext = new ExecutionContext();
+
+        MappedCsvItemReader<List<String>> first = this.reader(file, 1, MappedCsvItemReader.DEFAULT_WINDOW_SIZE);
+        first.open(executionContext);
+        first.read();
+        first.read();
+        first.update(executionContext); // 두 번째 줄까지 commit
+        first.read(); // commit 되지 않은 줄
+        first.close();
+
+        List<List<String>> items = this.readAll(this.reader(file, 1, MappedCsvItemReader.DEFAULT_WINDOW_SIZE), executionContext);
+
+        assertThat(items).containsExactly(
+            Arrays.asList("c", "3"),
+            Arrays.asList("d", "4")
+        );
+    }
+
+    @Test
+    void readLineCrossingEndOffsetToItsEnd() throws Exception {
+
+        Path file = this.write("a,1\nlong line,2\nc,3\n");
+
+        MappedCsvItemReader<List<String>> first = this.reader(file, 0, MappedCsvItemReader.DEFAULT_WINDOW_SIZE);
+        first.setEndOffset(6); // 두 번째 줄의 중간
+
+        MappedCsvItemReader<List<String>> second = this.reader(file, 0, MappedCsvItemReader.DEFAULT_WINDOW_SIZE);
+        second.setStartOffset(16); // 세 번째 줄의 시작
+
+        assertThat(this.readAll(first, new ExecutionContext())).containsExactly(
+            Arrays.asList("a", "1"),
+            Arrays.asList("long line", "2")
+        );
+        assertThat(this.readAll(second, new ExecutionContext())).containsExactly(
+            Arrays.asList("c", "3")
+        );
+    }
+
+    @Test
+    void failWhenStartOffsetIsNotLineStart() throws Exception {
+
+        MappedCsvItemReader<List<String>> reader = this.reader(this.write("a,1\nb,2\n"), 0, MappedCsvItemReader.DEFAULT_WINDOW_SIZE);
+        reader.setStartOffset(5);
+
+        try {
+            assertThatThrownBy(() -> reader.open(new ExecutionContext())).isInstanceOf(ItemStreamException.class);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private MappedCsvItemReader<List<String>> reader(Path file, int linesToSkip, long windowSize) {
+
+        MappedCsvItemReader<List<String>> reader = new MappedCsvItemReader<>(record -> {
+
+            List<String> fields = new ArrayList<>();
+
+            for (int i = 0; i < record.getFieldCount(); i++) {
+                fields.add(record.getString(i));
+            }
+
+            return fields;
+        });
+        reader.setName("test");
+        reader.setResource(new FileSystemResource(file));
+        reader.setLinesToSkip(linesToSkip);
+        reader.setWindowSize(windowSize);
+        reader.afterPropertiesSet();
+
+        return reader;
+    }
+
+    private List<List<String>> readAll(MappedCsvItemReader<List<String>> reader, ExecutionContext executionContext) throws Exception {
+
+        List<List<String>> items = new ArrayList<>();
+
+        reader.open(executionContext);
+
+        try {
+            for (List<String> item = reader.read(); item != null; item = reader.read()) {
+                items.add(item);
+            }
+        } finally {
+            reader.close();
+        }
+
+        return items;
+    }
+
+    private Path write(String content) throws Exception {
+
+        return this.write(new byte[0], content);
+    }
+
+    private Path write(byte[] prefix, String content) throws Exception {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(prefix);
+        bytes.write(content.getBytes(StandardCharsets.UTF_8));
+
+        return Files.write(Files.createTempFile(directory, "mapped", ".csv"), bytes.toByteArray());
+    }
+}
@@ -0,0 +1,76 @@
+package spring.study.batch.part6;
+
+import org.junit.jupiter.api.Test;
+import org.junit.runner.RunWith;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.test.StepRunner;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringRunner;
+import spring.study.batch.TestConfiguration;
+import spring.study.batch.part4.LevelRuleConfiguration;
+import spring.study.batch.part4.UserConfiguration;
+
+import javax.sql.DataSource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBatchTest
+@RunWith(SpringRunner.class)
+@ContextConfiguration(classes = { UserConfiguration.class, LevelRuleConfiguration.class, TestConfiguration.class })
+class QueryPlanGuardTaskletTest {
+
+    @Autowired
+    private JobLauncher jobLauncher;
+    @Autowired
+    private JobRepository jobRepository;
+    @Autowired
+    @Qualifier("userJob_queryPlanGuardStep")
+    private Step queryPlanGuardStep;
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void failWhenCreatedDateIndexIsDropped() {
+
+        StepExecution passed = this.launch(1);
+
+        assertThat(passed.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        assertThat(passed.getExecutionContext().getInt(QueryPlanGuardTasklet.VIOLATIONS_KEY)).isZero();
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP INDEX idx_orders_created_date");
+
+        try {
+            StepExecution failed = this.launch(2);
+
+            assertThat(failed.getStatus()).isEqualTo(BatchStatus.FAILED);
+            assertThat(failed.getExecutionContext().getInt(QueryPlanGuardTasklet.VIOLATIONS_KEY)).isEqualTo(1);
+            assertThat(failed.getFailureExceptions())
+                .singleElement()
+                .isInstanceOf(IllegalStateException.class)
+                .satisfies(e -> assertThat(e.getMessage()).contains("orderStatisticsItemReader"));
+        } finally {
+            jdbcTemplate.execute("CREATE INDEX idx_orders_created_date ON orders (created_date)"); // 같은 context를 사용하는 다른 테스트를 위해 되돌린다.
+        }
+    }
+
+    private StepExecution launch(long run) {
+
+        JobExecution jobExecution = new StepRunner(jobLauncher, jobRepository).launchStep(queryPlanGuardStep, new JobParametersBuilder()
+            .addString("queryPlanGuard", "FAIL")
+            .addLong("run", run)
+            .toJobParameters());
+
+        return jobExecution.getStepExecutions().iterator().next();
+    }
+}